@@ -0,0 +1,135 @@
+package com.projectfive.client;
+
+import com.projectfive.config.ConnectionPool;
+import com.projectfive.config.Service;
+import com.projectfive.config.options.KnownServices;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.jetbrains.annotations.NotNull;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.projectfive.config.ConfigLoader.getConfig;
+
+/**
+ * Hands out one shared {@link Client} per {@link KnownServices}. Every client keeps a pool of connections to its
+ * service, configured by the {@link ConnectionPool} of the service in ServiceConfig.conf, so all tests and threads
+ * reuse the same warm connections instead of connecting again for every {@link RestClient}.
+ *
+ * <p>The clients are created on first use and stay open until {@link ClientFactory#closeAll()} is called, which
+ * the {@link com.projectfive.runner.TestRunner} does once all tests have run.
+ *
+ * @author <a href="mailto:JGraham@aimconsulting.com">Justin Graham</a>
+ * @since 2/15/16
+ */
+public class ClientFactory {
+
+    // Cached clients and policies
+    private static final Map<KnownServices, Client> clients = new ConcurrentHashMap<>();
+    private static final Map<KnownServices, ResiliencePolicy> policies = new ConcurrentHashMap<>();
+
+    /**
+     * Hide the constructor of the static factory
+     */
+    private ClientFactory() { /* Static factory */ }
+
+    /**
+     * Single point of access to the shared {@link Client} of a service. Will build the client if it's not cached.
+     *
+     * @param service the service to connect to
+     * @return cached {@link Client} of the service
+     */
+    @NotNull
+    public static Client getClient(@NotNull KnownServices service) {
+        return clients.computeIfAbsent(service, known -> buildClient(getService(known)));
+    }
+
+    /**
+     * Single point of access to the shared {@link ResiliencePolicy} of a service. Will build the policy from the
+     * {@link com.projectfive.config.Resilience} of the service if it's not cached.
+     *
+     * @param service the service to guard
+     * @return cached {@link ResiliencePolicy} of the service
+     */
+    @NotNull
+    public static ResiliencePolicy getPolicy(@NotNull KnownServices service) {
+        return policies.computeIfAbsent(service,
+                known -> new ResiliencePolicy(known.toString(), getService(known).getResilience()));
+    }
+
+    /**
+     * Creates a {@link RestClient} on the shared {@link Client} of a service, with the host and version of the
+     * service already set. When the service turns on any of its {@link com.projectfive.config.Resilience} the calls
+     * are guarded by the {@link ResiliencePolicy} of the service, otherwise every request is sent once.
+     *
+     * @param service the service to connect to
+     * @return a new {@link RestClient} pointing at host/{version}
+     */
+    @NotNull
+    public static RestClient getRestClient(@NotNull KnownServices service) {
+        final Service config = getService(service);
+        final RestClient restClient = new RestClient(config.getHost(), getClient(service))
+                .path(config.getVersion());
+        return config.getResilience().isEnabled() ? restClient.resilience(getPolicy(service)) : restClient;
+    }
+
+    /**
+     * Closes all cached clients along with their pooled connections, and forgets the state of the cached policies.
+     * A later call to {@link ClientFactory#getClient(KnownServices)} builds a new client.
+     */
+    public static void closeAll() {
+        policies.clear();
+        for (KnownServices service : clients.keySet()) {
+            final Client client = clients.remove(service);
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * @param service the service to look up
+     * @return the configuration of the service
+     * @throws IllegalArgumentException if ServiceConfig.conf has no configuration for the service
+     */
+    private static Service getService(KnownServices service) throws IllegalArgumentException {
+        final Service config = getConfig().getServices().get(service);
+        if (config == null) {
+            throw new IllegalArgumentException("No configuration found for service: " + service);
+        }
+        return config;
+    }
+
+    /**
+     * Builds a {@link Client} executing its requests through a pool of connections. Each asynchronous request
+     * blocks a worker thread of the client while it's in flight, so the workers are bounded to the size of the pool,
+     * as any further worker would only wait for a connection.
+     *
+     * @param service the configuration of the service to connect to
+     * @return the new {@link Client}
+     */
+    private static Client buildClient(Service service) {
+        final ConnectionPool pool = service.getConnectionPool();
+
+        // All connections go to the same host, so a single route may use the whole pool
+        final PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(pool.getConnectionTtlMillis(), TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(pool.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(pool.getMaxConnections());
+
+        final ClientConfig config = new ClientConfig()
+                .connectorProvider(new ApacheConnectorProvider())
+                .property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager)
+                .property(ClientProperties.CONNECT_TIMEOUT, pool.getConnectTimeoutMillis())
+                .property(ClientProperties.READ_TIMEOUT, pool.getReadTimeoutMillis())
+                .property(ClientProperties.ASYNC_THREADPOOL_SIZE, pool.getMaxConnections());
+        return ClientBuilder.newClient(config);
+    }
+}
@@ -0,0 +1,301 @@
+package com.projectfive.client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.projectfive.config.Resilience;
+import org.jetbrains.annotations.NotNull;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.Response;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Guards the calls to a single service with the retries, hedged requests and circuit breaker configured in its
+ * {@link Resilience}. A policy keeps the response times and failures of all calls to the service, so all
+ * {@link RestClient}s of a service must share the same policy, as handed out by
+ * {@link ClientFactory#getRestClient(com.projectfive.config.options.KnownServices)}.
+ *
+ * <p>A call fails when it throws or responds with a 5xx status. Failed idempotent calls are retried after a
+ * jittered backoff, the last failed response is returned as is. Every failure counts towards opening the circuit,
+ * every success closes it again. Once the circuit has been open long enough, a single call is sent on its own,
+ * without hedging, to probe whether the service recovered.
+ *
+ * @author <a href="mailto:JGraham@aimconsulting.com">Justin Graham</a>
+ * @since 2/15/16
+ */
+public class ResiliencePolicy {
+
+    /**
+     * The amount of recent response times to take the hedging percentile of
+     */
+    private static final int LATENCY_WINDOW = 100;
+
+    /**
+     * The least amount of response times needed before any request is hedged
+     */
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    // Schedules the retries and hedged requests of all policies
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rest-client-scheduler-%d").build());
+
+    private final String name;
+    private final Resilience settings;
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencyCount;
+    private int nextLatency;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean probing;
+
+    /**
+     * @param name the name of the guarded service, used in error messages
+     * @param settings the retries, hedged requests and circuit breaker to apply
+     */
+    public ResiliencePolicy(@NotNull String name, @NotNull Resilience settings) {
+        this.name = name;
+        this.settings = settings;
+    }
+
+    /**
+     * Executes a call, retrying and hedging it when it's idempotent.
+     *
+     * @param idempotent whether the call may be sent more than once
+     * @param call sends the request once for every invocation
+     * @return a future completed with the first successful response, or the last failure
+     */
+    @NotNull
+    public CompletableFuture<Response> execute(boolean idempotent,
+                                               @NotNull Supplier<CompletableFuture<Response>> call) {
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        attempt(idempotent, call, result, 0);
+        return result;
+    }
+
+    /**
+     * Sends a single attempt of a call, scheduling the next attempt if it failed and may be retried
+     *
+     * @param idempotent whether the call may be sent more than once
+     * @param call sends the request once for every invocation
+     * @param result to complete once no further attempt is made
+     * @param retry the amount of attempts made before this one
+     */
+    private void attempt(boolean idempotent, Supplier<CompletableFuture<Response>> call,
+                         CompletableFuture<Response> result, int retry) {
+        final Admission admission = allowRequest();
+        if (admission == Admission.REJECTED) {
+            result.completeExceptionally(new CircuitOpenException(name));
+            return;
+        }
+        final boolean probe = admission == Admission.PROBE;
+        final CompletableFuture<Response> response = idempotent && !probe ? hedge(call) : timed(call);
+        response.whenComplete((value, failure) -> {
+            final boolean failed = isFailure(value, failure);
+            record(failed, probe);
+            if (failed && idempotent && retry < settings.getMaxRetries()) {
+                if (value != null) {
+                    value.close();
+                }
+                scheduler.schedule(() -> attempt(true, call, result, retry + 1), backoff(retry), MILLISECONDS);
+            } else if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    /**
+     * Sends the call, and sends it a second time once the first request takes longer than the configured
+     * percentile of the recent response times
+     *
+     * @param call sends the request once for every invocation
+     * @return a future completed with the first successful response, or the last failure
+     */
+    private CompletableFuture<Response> hedge(Supplier<CompletableFuture<Response>> call) {
+        final long delay = hedgeDelay();
+        if (delay < 0) {
+            return timed(call);
+        }
+        final Hedge hedge = new Hedge();
+        hedge.send(call);
+        final ScheduledFuture<?> timer = scheduler.schedule(() -> hedge.send(call), delay, MILLISECONDS);
+        hedge.whenComplete((value, failure) -> timer.cancel(false));
+        return hedge;
+    }
+
+    /**
+     * Sends the call, keeping its response time when it succeeds
+     *
+     * @param call sends the request
+     * @return the future of the response
+     */
+    private CompletableFuture<Response> timed(Supplier<CompletableFuture<Response>> call) {
+        final long start = System.nanoTime();
+        return send(call).whenComplete((value, failure) -> {
+            if (!isFailure(value, failure)) {
+                recordLatency(millisSince(start));
+            }
+        });
+    }
+
+    /**
+     * Sends the call, turning an exception thrown while sending into a failed future
+     *
+     * @param call sends the request
+     * @return the future of the response
+     */
+    private static CompletableFuture<Response> send(Supplier<CompletableFuture<Response>> call) {
+        try {
+            return call.get();
+        } catch (RuntimeException ex) {
+            final CompletableFuture<Response> response = new CompletableFuture<>();
+            response.completeExceptionally(ex);
+            return response;
+        }
+    }
+
+    /**
+     * @param retry the amount of attempts made before the failed one
+     * @return a random wait up to the exponential backoff of the retry
+     */
+    private long backoff(int retry) {
+        final long backoff = Math.min(settings.getMaxRetryBackoffMillis(),
+                settings.getRetryBackoffMillis() << Math.min(retry, 30));
+        return ThreadLocalRandom.current().nextLong(Math.max(1, backoff) + 1);
+    }
+
+    /**
+     * @return the configured percentile of the recent response times, -1 if requests should not be hedged
+     */
+    synchronized long hedgeDelay() {
+        if (settings.getHedgePercentile() <= 0 || latencyCount < MIN_LATENCY_SAMPLES) {
+            return -1;
+        }
+        final long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        final int index = (int) Math.ceil(settings.getHedgePercentile() / 100.0 * latencyCount) - 1;
+        return sorted[Math.max(0, Math.min(latencyCount - 1, index))];
+    }
+
+    private synchronized void recordLatency(long millis) {
+        latencies[nextLatency] = millis;
+        nextLatency = (nextLatency + 1) % LATENCY_WINDOW;
+        latencyCount = Math.min(latencyCount + 1, LATENCY_WINDOW);
+    }
+
+    /**
+     * Lets calls through while the circuit is closed, and a single probing call once it has been open long enough
+     *
+     * @return whether and how a call may be sent
+     */
+    synchronized Admission allowRequest() {
+        if (settings.getCircuitFailureThreshold() <= 0 || consecutiveFailures < settings.getCircuitFailureThreshold()) {
+            return Admission.CLOSED;
+        }
+        if (probing || System.currentTimeMillis() < openUntil) {
+            return Admission.REJECTED;
+        }
+        probing = true;
+        return Admission.PROBE;
+    }
+
+    /**
+     * Counts the outcome of a call towards the circuit, opening it once too many calls failed in a row. Only the
+     * outcome of the probe lets another probe through, calls sent before the circuit opened may still complete while
+     * the probe is running.
+     *
+     * @param failed whether the call failed
+     * @param probe whether the call was let through as the probe of an open circuit
+     */
+    synchronized void record(boolean failed, boolean probe) {
+        if (probe) {
+            probing = false;
+        }
+        if (!failed) {
+            consecutiveFailures = 0;
+        } else if (++consecutiveFailures >= settings.getCircuitFailureThreshold()) {
+            openUntil = System.currentTimeMillis() + settings.getCircuitOpenMillis();
+        }
+    }
+
+    /**
+     * @param start the {@link System#nanoTime()} a request was sent at
+     * @return the milliseconds passed since
+     */
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static boolean isFailure(Response response, Throwable failure) {
+        return failure != null || response.getStatus() >= 500;
+    }
+
+    /**
+     * How {@link #allowRequest()} lets a call through
+     */
+    enum Admission {
+        /** The circuit is closed, the call is sent as usual */
+        CLOSED,
+        /** The call is the single probe of an open circuit */
+        PROBE,
+        /** The circuit is open, the call fails right away */
+        REJECTED
+    }
+
+    /**
+     * A request sent once or twice, completed by the first successful response. Only the response time of the
+     * request completing the hedge is kept, the responses arriving after it are closed.
+     */
+    private class Hedge extends CompletableFuture<Response> {
+        private int sent;
+        private int settled;
+
+        synchronized void send(Supplier<CompletableFuture<Response>> call) {
+            if (isDone()) {
+                return;
+            }
+            sent++;
+            final long start = System.nanoTime();
+            ResiliencePolicy.send(call).whenComplete((response, failure) -> settle(response, failure, start));
+        }
+
+        private synchronized void settle(Response response, Throwable failure, long start) {
+            settled++;
+            if (isDone()) {
+                if (response != null) {
+                    response.close();
+                }
+            } else if (!isFailure(response, failure) || settled == sent) {
+                if (failure != null) {
+                    completeExceptionally(failure);
+                } else {
+                    if (!isFailure(response, null)) {
+                        recordLatency(millisSince(start));
+                    }
+                    complete(response);
+                }
+            } else if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    /**
+     * Thrown when a call is not sent because the circuit of the service is open
+     */
+    public static class CircuitOpenException extends ProcessingException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(String name) {
+            super("Circuit open for service: " + name);
+        }
+    }
+}
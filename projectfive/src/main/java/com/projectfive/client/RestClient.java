@@ -1,41 +1,70 @@
 package com.projectfive.client;
 
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Cookie;
 import javax.ws.rs.core.Form;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-import static java.util.Arrays.asList;
 import static javax.ws.rs.core.UriBuilder.fromUri;
 
 /**
  * An immutable, fluent REST client wrapping a {@link Client}
  *
+ * <p>Every step of the fluent API only links its value onto the steps before it, sharing them with the
+ * {@link RestClient} it was called on, so building a request copies nothing. The url, headers and cookies are put
+ * together once, when the request is executed.
+ *
+ * <p>Every HTTP verb comes in a blocking and an asynchronous flavor. The asynchronous methods return right away
+ * with a {@link CompletableFuture}, so the calling thread can send several requests before waiting on any of them.
+ * The requests still block while they are in flight: Jersey runs each one on a worker thread of the async executor
+ * of the {@link Client}, one thread per request. The clients of the {@link ClientFactory} bound that executor to
+ * the size of their connection pool, further requests wait in its queue:
+ *
+ * <pre>{@code
+ *  final RestClient users = new RestClient("http://www.test.com/").path("user");
+ *  final CompletableFuture<User> first = users.path("1").getAsync(User.class);
+ *  final CompletableFuture<User> second = users.path("2").getAsync(User.class);
+ *  first.thenCombine(second, (one, two) -> asList(one, two)).join();
+ * }</pre>
+ *
+ * <p>Calls can be guarded by a {@link ResiliencePolicy}, retrying, hedging or failing them fast depending on the
+ * health of the service. A blocking call with a policy waits on its asynchronous flavor, so its attempts can be
+ * scheduled and raced like those of any asynchronous call.
+ *
  * @author <a href="mailto:JGraham@aimconsulting.com">Justin Graham</a>
  * @since 2/15/16
  */
 public class RestClient {
 
-    private final Map<String, String> headerParams;
-    private final List<Cookie> cookies;
-    private final UriBuilder uri;
+    private final String baseUri;
+    private final Chain<String> paths;
+    private final Chain<Map.Entry<String, String>> queries;
+    private final Chain<Map.Entry<String, String>> headerParams;
+    private final Chain<Cookie> cookies;
     private final Client client;
     private final MediaType[] request;
     private final MediaType[] accept;
+    private final ResiliencePolicy policy;
 
     /**
      * The default entry point into a {@link RestClient}. Using this constructor will generate a new {@link Client}
-     * to handle all HTTP requests.
+     * to handle all HTTP requests. To share pooled connections to a known service use
+     * {@link ClientFactory#getRestClient(com.projectfive.config.options.KnownServices)} instead.
      *
      * @param baseUri the base URL to build the REST request off
      */
@@ -50,27 +79,35 @@ public class RestClient {
      * @param client the base client to execute the HTTP requests
      */
     public RestClient(String baseUri, Client client) {
-        this(fromUri(baseUri), client, new HashMap<>(), new ArrayList<>(), new MediaType[0], new MediaType[0]);
+        this(baseUri, Chain.empty(), Chain.empty(), client, Chain.empty(), Chain.empty(),
+             new MediaType[0], new MediaType[0], null);
     }
 
     /**
      * This constructor is used internally to build up the REST request
      *
-     * @param uri built using {@link RestClient}
+     * @param baseUri the base URL to build the REST request off
+     * @param paths to be appended to the base URL
+     * @param queries to be appended to the end of the url
      * @param client to be used during HTTP request execution
      * @param headerParams to be added to the header of the HTTP request
      * @param cookies to be added to the header of the HTTP request
      * @param request to specify the current request type
      * @param accept to specify the expected response type
+     * @param policy to guard the HTTP requests, or null to send them only once
      */
-    private RestClient(UriBuilder uri, Client client, Map<String, String> headerParams,
-                       List<Cookie> cookies, MediaType[] request, MediaType[] accept) {
-        this.uri = uri;
+    private RestClient(String baseUri, Chain<String> paths, Chain<Map.Entry<String, String>> queries, Client client,
+                       Chain<Map.Entry<String, String>> headerParams, Chain<Cookie> cookies,
+                       MediaType[] request, MediaType[] accept, ResiliencePolicy policy) {
+        this.baseUri = baseUri;
+        this.paths = paths;
+        this.queries = queries;
         this.client = client;
         this.headerParams = headerParams;
         this.cookies = cookies;
         this.request = request;
         this.accept = accept;
+        this.policy = policy;
     }
 
     /**
@@ -87,9 +124,11 @@ public class RestClient {
      * @return this with an added path
      */
     public RestClient path(String... path) {
-        final UriBuilder builder = fromUri(uri.toTemplate());
-        asList(path).forEach(builder::path);
-        return new RestClient(builder, client, headerParams, cookies, request, accept);
+        Chain<String> newPaths = paths;
+        for (String segment : path) {
+            newPaths = newPaths.with(segment);
+        }
+        return new RestClient(baseUri, newPaths, queries, client, headerParams, cookies, request, accept, policy);
     }
 
     /**
@@ -109,8 +148,8 @@ public class RestClient {
      * @return this with an added query
      */
     public RestClient query(String key, String value) {
-        final UriBuilder builder = fromUri(uri.toTemplate()).queryParam(key, value);
-        return new RestClient(builder, client, headerParams, cookies, request, accept);
+        final Chain<Map.Entry<String, String>> newQueries = queries.with(new SimpleImmutableEntry<>(key, value));
+        return new RestClient(baseUri, paths, newQueries, client, headerParams, cookies, request, accept, policy);
     }
 
     /**
@@ -121,11 +160,8 @@ public class RestClient {
      * @return this with an added header
      */
     public RestClient header(final String name, final String value) {
-        final Map<String, String> newHeaders = new HashMap<String, String>() {{
-            putAll(headerParams);
-            put(name, value);
-        }};
-        return new RestClient(uri, client, newHeaders, cookies, request, accept);
+        final Chain<Map.Entry<String, String>> newHeaders = headerParams.with(new SimpleImmutableEntry<>(name, value));
+        return new RestClient(baseUri, paths, queries, client, newHeaders, cookies, request, accept, policy);
     }
 
     /**
@@ -146,11 +182,8 @@ public class RestClient {
      * @return this with a new cookie
      */
     public RestClient cookie(final Cookie cookie) {
-        final List<Cookie> newCookies = new ArrayList<Cookie>() {{
-            addAll(cookies);
-            add(cookie);
-        }};
-        return new RestClient(uri, client, headerParams, newCookies, request, accept);
+        final Chain<Cookie> newCookies = cookies.with(cookie);
+        return new RestClient(baseUri, paths, queries, client, headerParams, newCookies, request, accept, policy);
     }
 
     /**
@@ -165,7 +198,7 @@ public class RestClient {
      * @see MediaType#TEXT_PLAIN_TYPE
      */
     public RestClient request(final MediaType... request) {
-        return new RestClient(uri, client, headerParams, cookies, request, accept);
+        return new RestClient(baseUri, paths, queries, client, headerParams, cookies, request, accept, policy);
     }
 
     /**
@@ -180,7 +213,19 @@ public class RestClient {
      * @see MediaType#TEXT_PLAIN_TYPE
      */
     public RestClient accept(final MediaType... accept) {
-        return new RestClient(uri, client, headerParams, cookies, request, accept);
+        return new RestClient(baseUri, paths, queries, client, headerParams, cookies, request, accept, policy);
+    }
+
+    /**
+     * Allows the user to guard the requests with retries, hedged requests and a circuit breaker.
+     *
+     * @param policy the policy shared by all requests to the service
+     * @return this with an added policy
+     *
+     * @see ClientFactory#getRestClient(com.projectfive.config.options.KnownServices)
+     */
+    public RestClient resilience(final ResiliencePolicy policy) {
+        return new RestClient(baseUri, paths, queries, client, headerParams, cookies, request, accept, policy);
     }
 
     /**
@@ -189,8 +234,10 @@ public class RestClient {
      * @return the response from the GET request
      */
     public Response get() {
-        final WebTarget target = client.target(uri);
-        return getBuilder(target).get();
+        if (policy != null) {
+            return await(getAsync());
+        }
+        return invocation().get();
     }
 
     /**
@@ -217,8 +264,10 @@ public class RestClient {
      * @see Entity#text(Object)
      */
     public Response put(Entity<?> entity) {
-        final WebTarget target = client.target(uri);
-        return getBuilder(target).put(entity);
+        if (policy != null) {
+            return await(putAsync(entity));
+        }
+        return invocation().put(entity);
     }
 
     /**
@@ -251,8 +300,10 @@ public class RestClient {
      * @see Entity#text(Object)
      */
     public Response post(Entity<?> entity) {
-        final WebTarget target = client.target(uri);
-        return getBuilder(target).post(entity);
+        if (policy != null) {
+            return await(postAsync(entity));
+        }
+        return invocation().post(entity);
     }
 
     /**
@@ -279,8 +330,10 @@ public class RestClient {
      * @return the response from the DELETE request
      */
     public Response delete() {
-        final WebTarget target = client.target(uri);
-        return getBuilder(target).delete();
+        if (policy != null) {
+            return await(deleteAsync());
+        }
+        return invocation().delete();
     }
 
     /**
@@ -295,13 +348,199 @@ public class RestClient {
         return delete().readEntity(responseType);
     }
 
+    /**
+     * Execute a HTTP GET request against the aggregated endpoint without blocking the calling thread
+     *
+     * @return a future completed with the response from the GET request
+     */
+    public CompletableFuture<Response> getAsync() {
+        return execute(true, () -> {
+            final ResponseFuture future = new ResponseFuture();
+            invocation().async().get(future);
+            return future;
+        });
+    }
+
+    /**
+     * Execute a HTTP GET request against the aggregated endpoint without blocking the calling thread and
+     * deserialize the response into the provided type.
+     *
+     * @param responseType the class type to deserialize into
+     * @param <T> the type which will eventually be returned
+     * @return a future completed with the HTTP response body loaded into the final object
+     */
+    public <T> CompletableFuture<T> getAsync(Class<T> responseType) {
+        return getAsync().thenApply(response -> response.readEntity(responseType));
+    }
+
+    /**
+     * Execute a HTTP PUT request against the aggregated endpoint without blocking the calling thread
+     *
+     * @param entity the body of the PUT request
+     * @return a future completed with the response from the PUT request
+     *
+     * @see Entity#json(Object)
+     * @see Entity#form(Form)
+     * @see Entity#html(Object)
+     * @see Entity#text(Object)
+     */
+    public CompletableFuture<Response> putAsync(Entity<?> entity) {
+        return execute(true, () -> {
+            final ResponseFuture future = new ResponseFuture();
+            invocation().async().put(entity, future);
+            return future;
+        });
+    }
+
+    /**
+     * Execute a HTTP PUT request against the aggregated endpoint without blocking the calling thread and
+     * deserialize the response into the provided type.
+     *
+     * @param entity the body of the PUT request
+     * @param responseType the class type to deserialize into
+     * @param <T> the type which will eventually be returned
+     * @return a future completed with the HTTP response body loaded into the final object
+     *
+     * @see Entity#json(Object)
+     * @see Entity#form(Form)
+     * @see Entity#html(Object)
+     * @see Entity#text(Object)
+     */
+    public <T> CompletableFuture<T> putAsync(Entity<?> entity, Class<T> responseType) {
+        return putAsync(entity).thenApply(response -> response.readEntity(responseType));
+    }
+
+    /**
+     * Execute a HTTP POST request against the aggregated endpoint without blocking the calling thread
+     *
+     * @param entity the body of the POST request
+     * @return a future completed with the response from the POST request
+     *
+     * @see Entity#json(Object)
+     * @see Entity#form(Form)
+     * @see Entity#html(Object)
+     * @see Entity#text(Object)
+     */
+    public CompletableFuture<Response> postAsync(Entity<?> entity) {
+        return execute(false, () -> {
+            final ResponseFuture future = new ResponseFuture();
+            invocation().async().post(entity, future);
+            return future;
+        });
+    }
+
+    /**
+     * Execute a HTTP POST request against the aggregated endpoint without blocking the calling thread and
+     * deserialize the response into the provided type.
+     *
+     * @param entity the body of the POST request
+     * @param responseType the class type to deserialize into
+     * @param <T> the type which will eventually be returned
+     * @return a future completed with the HTTP response body loaded into the final object
+     *
+     * @see Entity#json(Object)
+     * @see Entity#form(Form)
+     * @see Entity#html(Object)
+     * @see Entity#text(Object)
+     */
+    public <T> CompletableFuture<T> postAsync(Entity<?> entity, Class<T> responseType) {
+        return postAsync(entity).thenApply(response -> response.readEntity(responseType));
+    }
+
+    /**
+     * Execute a HTTP DELETE request against the aggregated endpoint without blocking the calling thread
+     *
+     * @return a future completed with the response from the DELETE request
+     */
+    public CompletableFuture<Response> deleteAsync() {
+        return execute(true, () -> {
+            final ResponseFuture future = new ResponseFuture();
+            invocation().async().delete(future);
+            return future;
+        });
+    }
+
+    /**
+     * Execute a HTTP DELETE request against the aggregated endpoint without blocking the calling thread and
+     * deserialize the response into the provided type.
+     *
+     * @param responseType the class type to deserialize into
+     * @param <T> the type which will eventually be returned
+     * @return a future completed with the HTTP response body loaded into the final object
+     */
+    public <T> CompletableFuture<T> deleteAsync(Class<T> responseType) {
+        return deleteAsync().thenApply(response -> response.readEntity(responseType));
+    }
+
     /**
      * Provides the current url in the build process
      *
      * @return the current url
      */
     public String currentPath() {
-        return uri.toTemplate();
+        return uri().toTemplate();
+    }
+
+    /**
+     * Puts the base url, paths and queries together
+     *
+     * @return the builder of the aggregated url
+     */
+    private UriBuilder uri() {
+        final UriBuilder builder = fromUri(baseUri);
+        paths.forEach(builder::path);
+        queries.forEach(query -> builder.queryParam(query.getKey(), query.getValue()));
+        return builder;
+    }
+
+    /**
+     * Collects the header params, where a later value of a header replaces an earlier one
+     *
+     * @return the header params to add to the request
+     */
+    private Map<String, String> headers() {
+        final Map<String, String> headers = new LinkedHashMap<>();
+        headerParams.forEach(header -> headers.put(header.getKey(), header.getValue()));
+        return headers;
+    }
+
+    /**
+     * Targets the aggregated url with the request type, accept type, headers and cookies
+     *
+     * @return the builder to execute an HTTP request off
+     */
+    Invocation.Builder invocation() {
+        final WebTarget target = client.target(uri());
+        return getBuilder(target);
+    }
+
+    /**
+     * Sends the request through the policy, if any
+     *
+     * @param idempotent whether the request may be sent more than once
+     * @param call sends the request once for every invocation
+     * @return the future of the response
+     */
+    private CompletableFuture<Response> execute(boolean idempotent, Supplier<CompletableFuture<Response>> call) {
+        return policy == null ? call.get() : policy.execute(idempotent, call);
+    }
+
+    /**
+     * Waits for the response of an asynchronous request
+     *
+     * @param response the future of the response
+     * @return the response
+     * @throws ProcessingException if the request failed
+     */
+    private static Response await(CompletableFuture<Response> response) throws ProcessingException {
+        try {
+            return response.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new ProcessingException(ex.getCause());
+        }
     }
 
     /**
@@ -312,8 +551,75 @@ public class RestClient {
      */
     private Invocation.Builder getBuilder(WebTarget target) {
         final Invocation.Builder builder = target.request(request).accept(accept);
-        headerParams.forEach(builder::header);
+        headers().forEach(builder::header);
         cookies.forEach(builder::cookie);
         return builder;
     }
+
+    /**
+     * An immutable linked list sharing all but its last element with the list it was extended from
+     *
+     * @param <T> the type of the elements
+     */
+    private static final class Chain<T> {
+        private static final Chain<?> EMPTY = new Chain<>(null, null, 0);
+
+        private final T last;
+        private final Chain<T> previous;
+        private final int size;
+
+        private Chain(T last, Chain<T> previous, int size) {
+            this.last = last;
+            this.previous = previous;
+            this.size = size;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> Chain<T> empty() {
+            return (Chain<T>) EMPTY;
+        }
+
+        /**
+         * @param element the element to append
+         * @return a new list of all elements of this one followed by the given one
+         */
+        Chain<T> with(T element) {
+            return new Chain<>(element, this, size + 1);
+        }
+
+        /**
+         * @param action applied to every element in the order they were appended
+         */
+        @SuppressWarnings("unchecked")
+        void forEach(Consumer<? super T> action) {
+            if (size == 0) {
+                return;
+            }
+            final Object[] elements = new Object[size];
+            Chain<T> chain = this;
+            for (int i = size - 1; i >= 0; i--) {
+                elements[i] = chain.last;
+                chain = chain.previous;
+            }
+            for (Object element : elements) {
+                action.accept((T) element);
+            }
+        }
+    }
+
+    /**
+     * Bridges the callback of an asynchronous request to a {@link CompletableFuture}
+     */
+    private static class ResponseFuture extends CompletableFuture<Response> implements InvocationCallback<Response> {
+
+        @Override
+        public void completed(Response response) {
+            complete(response);
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            completeExceptionally(throwable);
+        }
+    }
 }
\ No newline at end of file
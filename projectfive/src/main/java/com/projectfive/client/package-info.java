@@ -24,9 +24,9 @@
  *          // UserClient access
  *          public static UserClient get() {
  *              if (cache == null) {
- *                  final Service userService = getConfig().getServices().get(USER);
- *                  // Create a new UserClient handing it a RestClient with the host/version already set
- *                  cache = new UserClient(new RestClient(userService.getHost()).path(userService.getVersion()));
+ *                  // Create a new UserClient handing it a RestClient with the host/version already set, sharing
+ *                  // the pooled connections to the user service
+ *                  cache = new UserClient(ClientFactory.getRestClient(USER));
  *              }
  *              return cache;
  *          }
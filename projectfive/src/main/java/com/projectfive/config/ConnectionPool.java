@@ -0,0 +1,35 @@
+package com.projectfive.config;
+
+import lombok.Data;
+
+/**
+ * The settings of the pooled connections to a {@link Service}. Every field has a default, so a service only needs
+ * to configure the values it wants to change.
+ *
+ * @author <a href="mailto:JGraham@aimconsulting.com">Justin Graham</a>
+ * @since 2/15/16
+ */
+@Data
+public class ConnectionPool {
+    /**
+     * The most connections open to the service at once, requests beyond it wait for a connection to be released.
+     * Also bounds the threads running the asynchronous requests to the service.
+     */
+    private int maxConnections = 20;
+
+    /**
+     * How long to wait for a connection to the service to be established
+     */
+    private int connectTimeoutMillis = 5000;
+
+    /**
+     * How long to wait for data from the service once connected
+     */
+    private int readTimeoutMillis = 30000;
+
+    /**
+     * The time to live of a pooled connection: how long after it was opened a connection may still be reused. An
+     * older connection is closed instead of being handed out again, however busy it has been.
+     */
+    private long connectionTtlMillis = 60000;
+}
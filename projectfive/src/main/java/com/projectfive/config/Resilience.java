@@ -0,0 +1,54 @@
+package com.projectfive.config;
+
+import lombok.Data;
+
+/**
+ * The settings of the retries, hedged requests and circuit breaker guarding the calls to a {@link Service}. Every
+ * feature is turned off by default, so a service only protects its calls once it opts in to them in its resilience
+ * block of ServiceConfig.conf.
+ *
+ * @author <a href="mailto:JGraham@aimconsulting.com">Justin Graham</a>
+ * @since 2/15/16
+ */
+@Data
+public class Resilience {
+    /**
+     * How often a failed GET, PUT or DELETE is retried, 0 to never retry. POST requests are never retried.
+     */
+    private int maxRetries = 0;
+
+    /**
+     * The backoff before the first retry, doubling with every further retry. The actual wait is a random time up to
+     * the backoff, so clients failing at the same time do not retry at the same time.
+     */
+    private long retryBackoffMillis = 100;
+
+    /**
+     * The largest backoff between two retries
+     */
+    private long maxRetryBackoffMillis = 2000;
+
+    /**
+     * The percentile of the recent response times after which a second GET, PUT or DELETE request is sent while
+     * the first one is still running, the first response to arrive is used. 0 to never send hedged requests.
+     */
+    private int hedgePercentile = 0;
+
+    /**
+     * The amount of consecutive failures which opens the circuit, 0 to never open it. While the circuit is open all
+     * calls fail right away.
+     */
+    private int circuitFailureThreshold = 0;
+
+    /**
+     * How long the circuit stays open before a single call is let through to probe whether the service recovered
+     */
+    private long circuitOpenMillis = 30000;
+
+    /**
+     * @return whether any of the retries, hedged requests or circuit breaker is turned on
+     */
+    public boolean isEnabled() {
+        return maxRetries > 0 || hedgePercentile > 0 || circuitFailureThreshold > 0;
+    }
+}
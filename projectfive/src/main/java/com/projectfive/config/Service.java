@@ -10,4 +10,6 @@ import lombok.Data;
 public class Service {
     private String host;
     private String version;
+    private ConnectionPool connectionPool = new ConnectionPool();
+    private Resilience resilience = new Resilience();
 }
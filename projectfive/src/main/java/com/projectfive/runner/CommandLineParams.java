@@ -1,12 +1,24 @@
 package com.projectfive.runner;
 
+import com.beust.jcommander.IParameterValidator;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Parameters;
 import com.projectfive.config.options.KnownEnvironments;
 import com.projectfive.config.options.KnownEnvironments.EnvironmentValidator;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.testng.xml.XmlSuite.ParallelMode;
+
+import java.util.EnumSet;
+import java.util.Set;
 
 import static com.projectfive.config.options.KnownEnvironments.TEST;
+import static org.testng.xml.XmlSuite.ParallelMode.CLASSES;
+import static org.testng.xml.XmlSuite.ParallelMode.INSTANCES;
+import static org.testng.xml.XmlSuite.ParallelMode.METHODS;
+import static org.testng.xml.XmlSuite.ParallelMode.NONE;
+import static org.testng.xml.XmlSuite.ParallelMode.TESTS;
 
 /**
  * This class defines the parameters which are able to be passed to the test suite. If the parameter is not
@@ -52,8 +64,110 @@ public class CommandLineParams {
     )
     private String environment = TEST.toString();
 
+    /**
+     * The {@link ParallelMode}s which can be selected, leaving out the deprecated 'true' and 'false'
+     */
+    private static final Set<ParallelMode> PARALLEL_MODES = EnumSet.of(NONE, METHODS, CLASSES, INSTANCES, TESTS);
+
+    /**
+     * Whether and how to run the tests in parallel. The default value is 'none' and the validation of the selected
+     * option exists in {@link ParallelModeValidator}
+     */
+    @Parameter(
+            names = "-parallel",
+            description = "Runs the tests in parallel by methods, classes or instances",
+            validateWith = ParallelModeValidator.class
+    )
+    private String parallel = NONE.toString();
+
+    /**
+     * The amount of threads running the tests in parallel, the default value matches the one of TestNG
+     */
+    @Parameter(
+            names = "-threads",
+            description = "The amount of threads running the tests in parallel",
+            validateWith = ThreadCountValidator.class
+    )
+    private int threadCount = 5;
+
+    /**
+     * The amount of threads running the data sets of a parallel data provider, the default value matches the one
+     * of TestNG. Only data providers declared with {@code @DataProvider(parallel = true)} are run in parallel.
+     */
+    @Parameter(
+            names = "-dataProviderThreads",
+            description = "The amount of threads running the data sets of a parallel data provider",
+            validateWith = ThreadCountValidator.class
+    )
+    private int dataProviderThreadCount = 10;
+
     @NotNull
     public String getEnvironment() {
         return environment;
     }
+
+    @NotNull
+    public ParallelMode getParallel() {
+        return ParallelMode.getValidParallel(parallel);
+    }
+
+    public boolean isParallel() {
+        return getParallel() != NONE;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public int getDataProviderThreadCount() {
+        return dataProviderThreadCount;
+    }
+
+    /**
+     * This class acts as the validator for the parallel parameter.
+     */
+    public static class ParallelModeValidator implements IParameterValidator {
+
+        /**
+         * Verifies the parallel parameter provided is one of the {@link #PARALLEL_MODES}
+         *
+         * @param name {@inheritDoc}
+         * @param value {@inheritDoc}
+         * @throws ParameterException {@inheritDoc}
+         */
+        @Override
+        public void validate(String name, @Nullable final String value) throws ParameterException {
+            if (value == null) return; // Use the default parallel mode
+            if (!PARALLEL_MODES.contains(ParallelMode.getValidParallel(value))) {
+                throw new ParameterException(
+                        "Selected parallel mode [" + value + "] is unknown. Please use one of " + PARALLEL_MODES);
+            }
+        }
+    }
+
+    /**
+     * This class acts as the validator for the thread count parameters.
+     */
+    public static class ThreadCountValidator implements IParameterValidator {
+
+        /**
+         * Verifies the thread count parameter provided is a number of at least one
+         *
+         * @param name {@inheritDoc}
+         * @param value {@inheritDoc}
+         * @throws ParameterException {@inheritDoc}
+         */
+        @Override
+        public void validate(String name, String value) throws ParameterException {
+            final int threads;
+            try {
+                threads = Integer.parseInt(value);
+            } catch (NumberFormatException ex) {
+                throw new ParameterException("Parameter " + name + " should be a number (found " + value + ")");
+            }
+            if (threads < 1) {
+                throw new ParameterException("Parameter " + name + " should be at least 1 (found " + value + ")");
+            }
+        }
+    }
 }
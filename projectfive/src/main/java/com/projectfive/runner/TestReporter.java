@@ -1,57 +1,101 @@
 package com.projectfive.runner;
 
 import lombok.extern.slf4j.Slf4j;
+import org.testng.ITestContext;
+import org.testng.ITestNGMethod;
 import org.testng.ITestResult;
 import org.testng.TestListenerAdapter;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An adapter to TestNG to allow cleaner Jenkins logging.
  *
+ * <p>The output of every test class is logged as one block starting with the name of the class. When the tests
+ * run serially the output is logged as the tests finish. When they run in parallel the output of each class is held
+ * back until every invocation of its test methods has finished, so the output of classes running at the same time
+ * does not interleave. Whatever is still held back when the tests are done, such as the output of an
+ * {@code @AfterClass} failure, is logged then. TestNG may call the reporter from many threads at once, so all
+ * callbacks are synchronized.
+ *
  * @author <a href="mailto:JGraham@aimconsulting.com">Justin Graham</a>
  * @since 2/15/16
  */
 @Slf4j
 public class TestReporter extends TestListenerAdapter {
 
+    private final boolean parallel;
+    private final Map<String, List<Runnable>> pendingOutput = new LinkedHashMap<>();
+    private final Map<String, Integer> pendingMethods = new HashMap<>();
+    private final Map<String, Integer> finishedInvocations = new HashMap<>();
     private String currentInstance = null;
     private List<ITestResult> failedTests = new ArrayList<>();
 
+    /**
+     * Creates a reporter for tests running serially
+     */
+    public TestReporter() {
+        this(false);
+    }
+
+    /**
+     * @param parallel whether the tests run in parallel, holding back the output until all tests have run
+     */
+    public TestReporter(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public synchronized void onStart(ITestContext testContext) {
+        super.onStart(testContext);
+        for (ITestNGMethod method : testContext.getAllTestMethods()) {
+            pendingMethods.merge(method.getTestClass().getName(), 1, Integer::sum);
+        }
+    }
+
     @Override
-    public void onConfigurationFailure(ITestResult itr) {
+    public synchronized void onConfigurationFailure(ITestResult itr) {
         super.onConfigurationFailure(itr);
-        log.error("  fail: " + itr.getMethod().getMethodName() + "()");
+        final String line = "  fail: " + itr.getMethod().getMethodName() + "()";
+        output(itr, () -> log.error(line));
     }
 
     @Override
-    public void onConfigurationSkip(ITestResult itr) {
+    public synchronized void onConfigurationSkip(ITestResult itr) {
         super.onConfigurationSkip(itr);
-        log.warn("  skip: " + itr.getMethod().getMethodName() + "()");
+        final String line = "  skip: " + itr.getMethod().getMethodName() + "()";
+        output(itr, () -> log.warn(line));
     }
 
     @Override
-    public void onTestStart(ITestResult result) {
+    public synchronized void onTestStart(ITestResult result) {
         super.onTestStart(result);
-        if (!result.getInstanceName().equals(currentInstance)) {
-            currentInstance = result.getInstanceName();
-            log.info("start: " + currentInstance);
-        }
+        output(result, () -> { });
     }
 
     @Override
-    public void onTestSuccess(ITestResult tr) {
+    public synchronized void onTestSuccess(ITestResult tr) {
         super.onTestSuccess(tr);
-        log.info("  pass: " + tr.getMethod().getMethodName() + "(" + getParams(tr) + ")");
+        final String line = "  pass: " + tr.getMethod().getMethodName() + "(" + getParams(tr) + ")";
+        output(tr, () -> log.info(line));
+        finish(tr);
     }
 
     @Override
-    public void onTestFailure(ITestResult tr) {
+    public synchronized void onTestFailure(ITestResult tr) {
         super.onTestFailure(tr);
-        log.warn("  fail: " + tr.getMethod().getMethodName() + "(" + getParams(tr) + ")");
-        logThrowable(tr.getThrowable());
+        final String line = "  fail: " + tr.getMethod().getMethodName() + "(" + getParams(tr) + ")";
+        final Throwable throwable = tr.getThrowable();
+        output(tr, () -> {
+            log.warn(line);
+            logThrowable(throwable);
+        });
         failedTests.add(tr);
+        finish(tr);
     }
 
     private void logThrowable(Throwable throwable) {
@@ -63,13 +107,82 @@ public class TestReporter extends TestListenerAdapter {
     }
 
     @Override
-    public void onTestSkipped(ITestResult tr) {
+    public synchronized void onTestSkipped(ITestResult tr) {
         super.onTestSkipped(tr);
-        log.info("  skip: " + tr.getMethod().getMethodName() + "(" + getParams(tr) + ")");
+        final String line = "  skip: " + tr.getMethod().getMethodName() + "(" + getParams(tr) + ")";
+        output(tr, () -> log.info(line));
+        finish(tr);
+    }
+
+    @Override
+    public synchronized void onFinish(ITestContext testContext) {
+        super.onFinish(testContext);
+        new ArrayList<>(pendingOutput.keySet()).forEach(this::flush);
+        pendingMethods.clear();
+        finishedInvocations.clear();
     }
 
-    public List<ITestResult> getFailedTests() {
-        return this.failedTests;
+    public synchronized List<ITestResult> getFailedTests() {
+        return new ArrayList<>(this.failedTests);
+    }
+
+    /**
+     * Logs the output of a test under the name of its class, or holds it back with the other output of the class
+     * when the tests run in parallel
+     *
+     * @param result the test the output belongs to
+     * @param line logs the output
+     */
+    private void output(ITestResult result, Runnable line) {
+        final String instance = result.getInstanceName();
+        if (parallel) {
+            pendingOutput.computeIfAbsent(instance, name -> new ArrayList<>()).add(line);
+            return;
+        }
+        if (!instance.equals(currentInstance)) {
+            currentInstance = instance;
+            log.info("start: " + currentInstance);
+        }
+        line.run();
+    }
+
+    /**
+     * Counts a finished invocation of a test when the tests run in parallel, logging the held back output of its
+     * class once every invocation of every test method of the class has finished. The invocations of a method are
+     * its invocation count times the amount of data sets of its data provider.
+     *
+     * @param result the finished test
+     */
+    private void finish(ITestResult result) {
+        if (!parallel) {
+            return;
+        }
+        final ITestNGMethod method = result.getMethod();
+        final String className = method.getTestClass().getName();
+        final String methodName = className + "." + method.getMethodName();
+        final int invocations = Math.max(1, method.getInvocationCount())
+                * Math.max(1, method.getParameterInvocationCount());
+        if (finishedInvocations.merge(methodName, 1, Integer::sum) < invocations) {
+            return;
+        }
+        finishedInvocations.remove(methodName);
+        if (pendingMethods.merge(className, -1, Integer::sum) <= 0) {
+            pendingMethods.remove(className);
+            flush(result.getInstanceName());
+        }
+    }
+
+    /**
+     * Logs the held back output of a test class
+     *
+     * @param instance the name of the test class
+     */
+    private void flush(String instance) {
+        final List<Runnable> lines = pendingOutput.remove(instance);
+        if (lines != null) {
+            log.info("start: " + instance);
+            lines.forEach(Runnable::run);
+        }
     }
 
     private String getParams(ITestResult tr) {
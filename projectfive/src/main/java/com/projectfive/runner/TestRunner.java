@@ -1,6 +1,7 @@
 package com.projectfive.runner;
 
 import com.beust.jcommander.JCommander;
+import com.projectfive.client.ClientFactory;
 import com.google.common.reflect.ClassPath;
 import lombok.extern.slf4j.Slf4j;
 import org.testng.ITestResult;
@@ -34,11 +35,19 @@ public class TestRunner {
 
         // Bootstrap TestNG to allow building an executable JAR
         final TestNG testNG = new TestNG();
-        final TestListenerAdapter adapter = new TestReporter();
+        final TestListenerAdapter adapter = new TestReporter(params.isParallel());
 
         testNG.setTestClasses(getTests());
+        testNG.setParallel(params.getParallel());
+        testNG.setThreadCount(params.getThreadCount());
+        testNG.setDataProviderThreadCount(params.getDataProviderThreadCount());
         testNG.addListener(adapter);
-        testNG.run();
+        try {
+            testNG.run();
+        } finally {
+            // Release the pooled connections shared by the tests
+            ClientFactory.closeAll();
+        }
 
         // If testNG contains failures the Jar needs to throw an exception for Jenkins to fail the build
         if (testNG.hasFailure()) reportFailures(adapter);
@@ -0,0 +1,148 @@
+package com.projectfive.client;
+
+import com.projectfive.config.ConfigLoader;
+import com.projectfive.config.Service;
+import com.projectfive.config.ServiceConfig;
+import com.projectfive.config.options.KnownServices;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.glassfish.jersey.client.ClientProperties;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.client.Client;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static com.projectfive.config.options.KnownServices.AUTH;
+import static com.projectfive.config.options.KnownServices.USER;
+import static mockit.Deencapsulation.getField;
+import static mockit.Deencapsulation.invoke;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author <a href="mailto:JGraham@aimconsulting.com">Justin Graham</a>
+ * @since 2/15/16
+ */
+@Test(groups = "unit")
+public class ClientFactoryTest {
+
+    private final String host = "http://www.test.com";
+    private final String version = "v1";
+
+    // Field/Method names used for verification
+    private final String clientsField = "clients";
+    private final String buildClientMethod = "buildClient";
+
+    private final Map<KnownServices, Service> services = new EnumMap<>(KnownServices.class);
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        final Service service = new Service();
+        service.setHost(host);
+        service.setVersion(version);
+        services.put(USER, service);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        ClientFactory.closeAll();
+        services.clear();
+    }
+
+    @Test
+    public void testGetClientCached(@Mocked ServiceConfig config, @Mocked Client client) throws Exception {
+        new Expectations(ClientFactory.class, ConfigLoader.class) {{
+            ConfigLoader.getConfig(); result = config;
+            config.getServices(); result = services;
+            invoke(ClientFactory.class, buildClientMethod, new Class<?>[]{Service.class}, any); result = client;
+        }};
+        assertThat(ClientFactory.getClient(USER)).isSameAs(client);
+        assertThat(ClientFactory.getClient(USER)).isSameAs(client);
+        new Verifications() {{
+            invoke(ClientFactory.class, buildClientMethod, new Class<?>[]{Service.class}, any); times = 1;
+        }};
+    }
+
+    @Test(
+            expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = "No configuration found for service: AUTH"
+    )
+    public void testGetClientUnknownService(@Mocked ServiceConfig config) throws Exception {
+        new Expectations(ConfigLoader.class) {{
+            ConfigLoader.getConfig(); result = config;
+            config.getServices(); result = services;
+        }};
+        ClientFactory.getClient(AUTH);
+    }
+
+    @Test
+    public void testGetRestClient(@Mocked ServiceConfig config, @Mocked Client client) throws Exception {
+        new Expectations(ClientFactory.class, ConfigLoader.class) {{
+            ConfigLoader.getConfig(); result = config;
+            config.getServices(); result = services;
+            invoke(ClientFactory.class, buildClientMethod, new Class<?>[]{Service.class}, any); result = client;
+        }};
+        final RestClient result = ClientFactory.getRestClient(USER);
+        assertThat(result.currentPath()).isEqualTo(host + "/" + version);
+        assertThat((Client) getField(result, "client")).isSameAs(client);
+        assertThat((ResiliencePolicy) getField(result, "policy")).isNull();
+    }
+
+    @Test
+    public void testGetRestClientResilience(@Mocked ServiceConfig config, @Mocked Client client) throws Exception {
+        services.get(USER).getResilience().setMaxRetries(2);
+        new Expectations(ClientFactory.class, ConfigLoader.class) {{
+            ConfigLoader.getConfig(); result = config;
+            config.getServices(); result = services;
+            invoke(ClientFactory.class, buildClientMethod, new Class<?>[]{Service.class}, any); result = client;
+        }};
+        final RestClient result = ClientFactory.getRestClient(USER);
+        assertThat((ResiliencePolicy) getField(result, "policy")).isSameAs(ClientFactory.getPolicy(USER));
+    }
+
+    @Test
+    public void testGetPolicyCached(@Mocked ServiceConfig config) throws Exception {
+        new Expectations(ConfigLoader.class) {{
+            ConfigLoader.getConfig(); result = config;
+            config.getServices(); result = services;
+        }};
+        final ResiliencePolicy result = ClientFactory.getPolicy(USER);
+        assertThat(result).isNotNull();
+        assertThat(ClientFactory.getPolicy(USER)).isSameAs(result);
+    }
+
+    @Test
+    public void testCloseAll(@Mocked Client client) throws Exception {
+        final Map<KnownServices, Client> clients = getField(ClientFactory.class, clientsField);
+        clients.put(USER, client);
+        clients.put(AUTH, client);
+
+        ClientFactory.closeAll();
+        assertThat(clients).isEmpty();
+        assertThat((Map<?, ?>) getField(ClientFactory.class, "policies")).isEmpty();
+        new Verifications() {{
+            client.close(); times = 2;
+        }};
+    }
+
+    @Test
+    public void testBuildClient() throws Exception {
+        final ServiceConfig config = invoke(ConfigLoader.class, "buildCache");
+        final Service service = config.getServices().get(USER);
+
+        final Client result = invoke(ClientFactory.class, buildClientMethod, service);
+        try {
+            assertThat(result.getConfiguration().getProperty(ClientProperties.CONNECT_TIMEOUT))
+                    .isEqualTo(service.getConnectionPool().getConnectTimeoutMillis());
+            assertThat(result.getConfiguration().getProperty(ClientProperties.READ_TIMEOUT))
+                    .isEqualTo(service.getConnectionPool().getReadTimeoutMillis());
+            assertThat(result.getConfiguration().getProperty(ClientProperties.ASYNC_THREADPOOL_SIZE))
+                    .isEqualTo(service.getConnectionPool().getMaxConnections());
+        } finally {
+            result.close();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.projectfive.client;
+
+import com.projectfive.client.ResiliencePolicy.Admission;
+import com.projectfive.client.ResiliencePolicy.CircuitOpenException;
+import com.projectfive.config.Resilience;
+import mockit.Expectations;
+import mockit.Injectable;
+import mockit.Verifications;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static mockit.Deencapsulation.getField;
+import static mockit.Deencapsulation.invoke;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * @author <a href="mailto:JGraham@aimconsulting.com">Justin Graham</a>
+ * @since 2/15/16
+ */
+@Test(groups = "unit")
+public class ResiliencePolicyTest {
+
+    @Injectable Response ok;
+    @Injectable Response error;
+
+    private final String name = "USER";
+    private final ProcessingException failure = new ProcessingException("failure");
+
+    private Resilience settings;
+    private AtomicInteger calls;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        settings = new Resilience();
+        settings.setRetryBackoffMillis(1);
+        settings.setMaxRetryBackoffMillis(1);
+        calls = new AtomicInteger();
+    }
+
+    @Test
+    public void testExecuteSuccess() throws Exception {
+        new Expectations() {{
+            ok.getStatus(); result = 200;
+        }};
+        settings.setMaxRetries(2);
+        final ResiliencePolicy tested = new ResiliencePolicy(name, settings);
+
+        assertThat(tested.execute(true, respond(ok)).get(1, TimeUnit.SECONDS)).isSameAs(ok);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testExecuteRetriesIdempotent() throws Exception {
+        new Expectations() {{
+            ok.getStatus(); result = 200;
+        }};
+        settings.setMaxRetries(2);
+        final ResiliencePolicy tested = new ResiliencePolicy(name, settings);
+
+        final Supplier<CompletableFuture<Response>> call = () -> calls.incrementAndGet() < 3 ? failed() : done(ok);
+        assertThat(tested.execute(true, call).get(1, TimeUnit.SECONDS)).isSameAs(ok);
+        assertThat(calls.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void testExecuteRetriesExhausted() throws Exception {
+        new Expectations() {{
+            error.getStatus(); result = 503;
+        }};
+        settings.setMaxRetries(2);
+        final ResiliencePolicy tested = new ResiliencePolicy(name, settings);
+
+        assertThat(tested.execute(true, respond(error)).get(1, TimeUnit.SECONDS)).isSameAs(error);
+        assertThat(calls.get()).isEqualTo(3);
+        new Verifications() {{
+            error.close(); times = 2;
+        }};
+    }
+
+    @Test
+    public void testExecuteNotIdempotent() throws Exception {
+        settings.setMaxRetries(2);
+        final ResiliencePolicy tested = new ResiliencePolicy(name, settings);
+
+        final Supplier<CompletableFuture<Response>> call = () -> {
+            calls.incrementAndGet();
+            return failed();
+        };
+        assertThat(catchThrowable(() -> tested.execute(false, call).get(1, TimeUnit.SECONDS)))
+                .isInstanceOf(ExecutionException.class).hasCause(failure);
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testExecuteCallThrows() throws Exception {
+        final ResiliencePolicy tested = new ResiliencePolicy(name, settings);
+
+        final Supplier<CompletableFuture<Response>> call = () -> {
+            throw failure;
+        };
+        assertThat(catchThrowable(() -> tested.execute(true, call).get(1, TimeUnit.SECONDS)))
+                .isInstanceOf(ExecutionException.class).hasCause(failure);
+    }
+
+    @Test
+    public void testCircuitOpen() throws Exception {
+        new Expectations() {{
+            error.getStatus(); result = 500;
+        }};
+        settings.setCircuitFailureThreshold(2);
+        settings.setCircuitOpenMillis(60000);
+        final ResiliencePolicy tested = new ResiliencePolicy(name, settings);
+
+        tested.execute(true, respond(error)).get(1, TimeUnit.SECONDS);
+        tested.execute(true, respond(error)).get(1, TimeUnit.SECONDS);
+        assertThat(catchThrowable(() -> tested.execute(true, respond(error)).get(1, TimeUnit.SECONDS)))
+                .isInstanceOf(ExecutionException.class).hasCauseInstanceOf(CircuitOpenException.class);
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testCircuitProbe() throws Exception {
+        settings.setCircuitFailureThreshold(1);
+        settings.setCircuitOpenMillis(0);
+        final ResiliencePolicy tested = new ResiliencePolicy(name, settings);
+
+        tested.record(true, false);
+        assertThat(tested.allowRequest()).isEqualTo(Admission.PROBE);
+        assertThat(tested.allowRequest()).isEqualTo(Admission.REJECTED);
+
+        // A call sent before the circuit opened does not let a second probe through
+        tested.record(true, false);
+        assertThat(tested.allowRequest()).isEqualTo(Admission.REJECTED);
+
+        tested.record(true, true);
+        assertThat(tested.allowRequest()).isEqualTo(Admission.PROBE);
+
+        tested.record(false, true);
+        assertThat(tested.allowRequest()).isEqualTo(Admission.CLOSED);
+        assertThat(tested.allowRequest()).isEqualTo(Admission.CLOSED);
+    }
+
+    @Test
+    public void testCircuitProbeNotHedged() throws Exception {
+        new Expectations() {{
+            ok.getStatus(); result = 200;
+        }};
+        settings.setHedgePercentile(50);
+        settings.setCircuitFailureThreshold(1);
+        settings.setCircuitOpenMillis(0);
+        final ResiliencePolicy tested = new ResiliencePolicy(name, settings);
+        for (int i = 0; i < 20; i++) {
+            invoke(tested, "recordLatency", 0L);
+        }
+        tested.record(true, false);
+
+        final CompletableFuture<Response> slow = new CompletableFuture<>();
+        final CompletableFuture<Response> result = tested.execute(true, () -> {
+            calls.incrementAndGet();
+            return slow;
+        });
+        Thread.sleep(100);
+        assertThat(calls.get()).isEqualTo(1);
+
+        slow.complete(ok);
+        assertThat(result.get(1, TimeUnit.SECONDS)).isSameAs(ok);
+        assertThat(tested.allowRequest()).isEqualTo(Admission.CLOSED);
+    }
+
+    @Test
+    public void testHedgeDelay() throws Exception {
+        settings.setHedgePercentile(90);
+        final ResiliencePolicy tested = new ResiliencePolicy(name, settings);
+
+        for (long millis = 1; millis < 20; millis++) {
+            invoke(tested, "recordLatency", millis);
+        }
+        assertThat(tested.hedgeDelay()).isEqualTo(-1);
+
+        invoke(tested, "recordLatency", 20L);
+        assertThat(tested.hedgeDelay()).isEqualTo(18);
+    }
+
+    @Test
+    public void testHedgeDisabled() throws Exception {
+        final ResiliencePolicy tested = new ResiliencePolicy(name, settings);
+
+        for (long millis = 0; millis < 20; millis++) {
+            invoke(tested, "recordLatency", millis);
+        }
+        assertThat(tested.hedgeDelay()).isEqualTo(-1);
+    }
+
+    @Test
+    public void testHedgeSecondResponseWins() throws Exception {
+        new Expectations() {{
+            ok.getStatus(); result = 200;
+        }};
+        settings.setHedgePercentile(50);
+        final ResiliencePolicy tested = new ResiliencePolicy(name, settings);
+        for (int i = 0; i < 20; i++) {
+            invoke(tested, "recordLatency", 0L);
+        }
+
+        final CompletableFuture<Response> slow = new CompletableFuture<>();
+        final Supplier<CompletableFuture<Response>> call = () -> calls.incrementAndGet() == 1 ? slow : done(ok);
+        assertThat(tested.execute(true, call).get(1, TimeUnit.SECONDS)).isSameAs(ok);
+        assertThat(calls.get()).isEqualTo(2);
+
+        slow.complete(error);
+        new Verifications() {{
+            error.close(); times = 1;
+        }};
+        // Only the response completing the hedge is kept, not the late one
+        assertThat((Integer) getField(tested, "latencyCount")).isEqualTo(21);
+    }
+
+    @Test
+    public void testHedgeLateSuccessNotRecorded() throws Exception {
+        new Expectations() {{
+            ok.getStatus(); result = 200;
+        }};
+        settings.setHedgePercentile(50);
+        final ResiliencePolicy tested = new ResiliencePolicy(name, settings);
+        for (int i = 0; i < 20; i++) {
+            invoke(tested, "recordLatency", 0L);
+        }
+
+        final CompletableFuture<Response> slow = new CompletableFuture<>();
+        final Supplier<CompletableFuture<Response>> call = () -> calls.incrementAndGet() == 1 ? slow : done(ok);
+        assertThat(tested.execute(true, call).get(1, TimeUnit.SECONDS)).isSameAs(ok);
+
+        slow.complete(ok);
+        assertThat((Integer) getField(tested, "latencyCount")).isEqualTo(21);
+    }
+
+    private Supplier<CompletableFuture<Response>> respond(Response response) {
+        return () -> {
+            calls.incrementAndGet();
+            return done(response);
+        };
+    }
+
+    private static CompletableFuture<Response> done(Response response) {
+        return CompletableFuture.completedFuture(response);
+    }
+
+    private CompletableFuture<Response> failed() {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+}
@@ -0,0 +1,144 @@
+package com.projectfive.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.UriBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+import static javax.ws.rs.core.UriBuilder.fromUri;
+
+/**
+ * Builds a request of a few paths, queries, headers and cookies up to the point it would be executed, once with
+ * the {@link RestClient} and once by reparsing the url and copying the headers and cookies on every step, as the
+ * {@link RestClient} used to. No request is sent.
+ *
+ * <p>Run with {@code mvn test -Pbenchmark -Dbenchmark=RestClientBenchmark}. Passing {@code -prof gc} to
+ * {@code org.openjdk.jmh.Main} also reports the bytes allocated per request.
+ *
+ * @author <a href="mailto:JGraham@aimconsulting.com">Justin Graham</a>
+ * @since 2/15/16
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RestClientBenchmark {
+
+    private static final String BASE_URI = "http://www.test.com/";
+
+    private Client client;
+    private RestClient restClient;
+
+    @Setup
+    public void setUp() {
+        client = ClientBuilder.newClient();
+        restClient = new RestClient(BASE_URI, client);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+
+    @Benchmark
+    public Invocation.Builder restClient() {
+        return restClient
+                .path("api", "v1")
+                .path("user")
+                .query("page", "1")
+                .query("size", "20")
+                .header("X-Request-Id", "1")
+                .header("X-Session-Id", "2")
+                .cookie("session", "3")
+                .cookie("locale", "en")
+                .accept(APPLICATION_JSON_TYPE)
+                .invocation();
+    }
+
+    @Benchmark
+    public Invocation.Builder reparsing() {
+        return new Reparsing(client, BASE_URI)
+                .path("api", "v1")
+                .path("user")
+                .query("page", "1")
+                .query("size", "20")
+                .header("X-Request-Id", "1")
+                .header("X-Session-Id", "2")
+                .cookie("session", "3")
+                .cookie("locale", "en")
+                .invocation();
+    }
+
+    /**
+     * The former request building of the {@link RestClient}
+     */
+    private static final class Reparsing {
+        private final Client client;
+        private final UriBuilder uri;
+        private final Map<String, String> headerParams;
+        private final List<Cookie> cookies;
+
+        private Reparsing(Client client, String baseUri) {
+            this(client, fromUri(baseUri), new HashMap<>(), new ArrayList<>());
+        }
+
+        private Reparsing(Client client, UriBuilder uri, Map<String, String> headerParams, List<Cookie> cookies) {
+            this.client = client;
+            this.uri = uri;
+            this.headerParams = headerParams;
+            this.cookies = cookies;
+        }
+
+        private Reparsing path(String... path) {
+            final UriBuilder builder = fromUri(uri.toTemplate());
+            for (String segment : path) {
+                builder.path(segment);
+            }
+            return new Reparsing(client, builder, headerParams, cookies);
+        }
+
+        private Reparsing query(String key, String value) {
+            return new Reparsing(client, fromUri(uri.toTemplate()).queryParam(key, value), headerParams, cookies);
+        }
+
+        private Reparsing header(String name, String value) {
+            final Map<String, String> newHeaders = new HashMap<>(headerParams);
+            newHeaders.put(name, value);
+            return new Reparsing(client, uri, newHeaders, cookies);
+        }
+
+        private Reparsing cookie(String name, String value) {
+            final List<Cookie> newCookies = new ArrayList<>(cookies);
+            newCookies.add(new Cookie(name, value));
+            return new Reparsing(client, uri, headerParams, newCookies);
+        }
+
+        private Invocation.Builder invocation() {
+            final Invocation.Builder builder = client.target(uri).request().accept(APPLICATION_JSON_TYPE);
+            headerParams.forEach(builder::header);
+            cookies.forEach(builder::cookie);
+            return builder;
+        }
+    }
+}
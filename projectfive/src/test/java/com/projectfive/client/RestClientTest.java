@@ -7,23 +7,29 @@ import mockit.Tested;
 import mockit.Verifications;
 import org.testng.annotations.Test;
 
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.AsyncInvoker;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Cookie;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
 import static javax.ws.rs.core.MediaType.TEXT_PLAIN_TYPE;
 import static mockit.Deencapsulation.getField;
 import static mockit.Deencapsulation.invoke;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.assertj.core.api.Assertions.entry;
 
 /**
@@ -37,6 +43,7 @@ public class RestClientTest {
     @Mocked WebTarget target;
     @Mocked Response response;
     @Mocked Invocation.Builder builder;
+    @Mocked AsyncInvoker asyncInvoker;
     @Mocked Cookie cookie;
     @Mocked UriBuilder uriBuilder;
     @Mocked Client client;
@@ -47,10 +54,11 @@ public class RestClientTest {
     private final String path = "path";
     private final String key = "key";
     private final String value = "value";
+    private static final Supplier<CompletableFuture<Response>> NO_CALL = CompletableFuture::new;
 
     // Field/Method names used for verification
-    private final String headerField = "headerParams";
-    private final String cookiesField = "cookies";
+    private final String headersMethod = "headers";
+    private final String policyField = "policy";
     private final String requestField = "request";
     private final String acceptField = "accept";
     private final String getBuilderMethod = "getBuilder";
@@ -59,6 +67,11 @@ public class RestClientTest {
     public void testPathSingle() throws Exception {
         final RestClient result = tested.path(path);
         assertThat(result).isNotSameAs(tested);
+        new Verifications() {{
+            uriBuilder.path(path); times = 0;
+        }};
+
+        result.currentPath();
         new Verifications() {{
             uriBuilder.path(path); times = 1;
         }};
@@ -68,6 +81,8 @@ public class RestClientTest {
     public void testPathMultiple() throws Exception {
         final RestClient result = tested.path(path, path, path);
         assertThat(result).isNotSameAs(tested);
+
+        result.currentPath();
         new Verifications() {{
             uriBuilder.path(path); times = 3;
         }};
@@ -77,6 +92,8 @@ public class RestClientTest {
     public void testQuery() throws Exception {
         final RestClient result = tested.query(key, value);
         assertThat(result).isNotSameAs(tested);
+
+        result.currentPath();
         new Verifications() {{
             uriBuilder.queryParam(key, value);
         }};
@@ -87,7 +104,7 @@ public class RestClientTest {
         final RestClient result = tested.header(key, value);
         assertThat(result).isNotSameAs(tested);
 
-        final Map<String, String> headers = getField(result, headerField);
+        final Map<String, String> headers = invoke(result, headersMethod);
         assertThat(headers).containsOnly(entry(key, value));
     }
 
@@ -96,7 +113,7 @@ public class RestClientTest {
         final RestClient result = tested.header(key, value).header(key, value);
         assertThat(result).isNotSameAs(tested);
 
-        final Map<String, String> headers = getField(result, headerField);
+        final Map<String, String> headers = invoke(result, headersMethod);
         assertThat(headers).containsOnly(entry(key, value), entry(key, value));
     }
 
@@ -112,13 +129,32 @@ public class RestClientTest {
         }};
     }
 
+    @Test
+    public void testHeaderReplaced() throws Exception {
+        final RestClient result = tested.header(key, path).header(key, value);
+
+        final Map<String, String> headers = invoke(result, headersMethod);
+        assertThat(headers).containsOnly(entry(key, value));
+    }
+
+    @Test
+    public void testHeaderShared() throws Exception {
+        final RestClient first = tested.header(key, value);
+        first.header(path, value);
+
+        final Map<String, String> headers = invoke(first, headersMethod);
+        assertThat(headers).containsOnly(entry(key, value));
+    }
+
     @Test
     public void testCookieEmpty() throws Exception {
         final RestClient result = tested.cookie(cookie);
         assertThat(result).isNotSameAs(tested);
 
-        final List<Cookie> cookies = getField(result, cookiesField);
-        assertThat(cookies).containsOnly(cookie);
+        invoke(result, getBuilderMethod, target);
+        new Verifications() {{
+            builder.cookie(cookie); times = 1;
+        }};
     }
 
     @Test
@@ -126,8 +162,10 @@ public class RestClientTest {
         final RestClient result = tested.cookie(cookie).cookie(cookie);
         assertThat(result).isNotSameAs(tested);
 
-        final List<Cookie> cookies = getField(result, cookiesField);
-        assertThat(cookies).containsOnly(cookie, cookie);
+        invoke(result, getBuilderMethod, target);
+        new Verifications() {{
+            builder.cookie(cookie); times = 2;
+        }};
     }
 
     @Test
@@ -238,6 +276,171 @@ public class RestClientTest {
         assertThat(tested.delete(String.class)).isSameAs(value);
     }
 
+    @Test
+    public void testGetAsyncResponse() throws Exception {
+        new Expectations(tested) {{
+            invoke(tested, getBuilderMethod, new Class<?>[]{WebTarget.class}, (WebTarget) any); result = builder;
+            builder.async(); result = asyncInvoker;
+        }};
+        final CompletableFuture<Response> result = tested.getAsync();
+        assertThat(result).isNotDone();
+
+        new Verifications() {{
+            InvocationCallback<Response> callback;
+            asyncInvoker.get(callback = withCapture());
+            callback.completed(response);
+        }};
+        assertThat(result.get()).isSameAs(response);
+    }
+
+    @Test
+    public void testGetAsyncFailed() throws Exception {
+        final RuntimeException failure = new RuntimeException(value);
+        new Expectations(tested) {{
+            invoke(tested, getBuilderMethod, new Class<?>[]{WebTarget.class}, (WebTarget) any); result = builder;
+            builder.async(); result = asyncInvoker;
+        }};
+        final CompletableFuture<Response> result = tested.getAsync();
+
+        new Verifications() {{
+            InvocationCallback<Response> callback;
+            asyncInvoker.get(callback = withCapture());
+            callback.failed(failure);
+        }};
+        assertThat(catchThrowable(result::get)).isInstanceOf(ExecutionException.class).hasCause(failure);
+    }
+
+    @Test
+    public void testGetAsyncObject() throws Exception {
+        new Expectations(tested) {{
+            invoke(tested, "getAsync"); result = CompletableFuture.completedFuture(response);
+            response.readEntity(String.class); result = value;
+        }};
+        assertThat(tested.getAsync(String.class).get()).isSameAs(value);
+    }
+
+    @Test
+    public void testPutAsyncResponse() throws Exception {
+        new Expectations(tested) {{
+            invoke(tested, getBuilderMethod, new Class<?>[]{WebTarget.class}, (WebTarget) any); result = builder;
+            builder.async(); result = asyncInvoker;
+        }};
+        final CompletableFuture<Response> result = tested.putAsync(entity);
+
+        new Verifications() {{
+            InvocationCallback<Response> callback;
+            asyncInvoker.put(entity, callback = withCapture());
+            callback.completed(response);
+        }};
+        assertThat(result.get()).isSameAs(response);
+    }
+
+    @Test
+    public void testPutAsyncObject() throws Exception {
+        new Expectations(tested) {{
+            invoke(tested, "putAsync", entity); result = CompletableFuture.completedFuture(response);
+            response.readEntity(String.class); result = value;
+        }};
+        assertThat(tested.putAsync(entity, String.class).get()).isSameAs(value);
+    }
+
+    @Test
+    public void testPostAsyncResponse() throws Exception {
+        new Expectations(tested) {{
+            invoke(tested, getBuilderMethod, new Class<?>[]{WebTarget.class}, (WebTarget) any); result = builder;
+            builder.async(); result = asyncInvoker;
+        }};
+        final CompletableFuture<Response> result = tested.postAsync(entity);
+
+        new Verifications() {{
+            InvocationCallback<Response> callback;
+            asyncInvoker.post(entity, callback = withCapture());
+            callback.completed(response);
+        }};
+        assertThat(result.get()).isSameAs(response);
+    }
+
+    @Test
+    public void testPostAsyncObject() throws Exception {
+        new Expectations(tested) {{
+            invoke(tested, "postAsync", entity); result = CompletableFuture.completedFuture(response);
+            response.readEntity(String.class); result = value;
+        }};
+        assertThat(tested.postAsync(entity, String.class).get()).isSameAs(value);
+    }
+
+    @Test
+    public void testDeleteAsyncResponse() throws Exception {
+        new Expectations(tested) {{
+            invoke(tested, getBuilderMethod, new Class<?>[]{WebTarget.class}, (WebTarget) any); result = builder;
+            builder.async(); result = asyncInvoker;
+        }};
+        final CompletableFuture<Response> result = tested.deleteAsync();
+
+        new Verifications() {{
+            InvocationCallback<Response> callback;
+            asyncInvoker.delete(callback = withCapture());
+            callback.completed(response);
+        }};
+        assertThat(result.get()).isSameAs(response);
+    }
+
+    @Test
+    public void testDeleteAsyncObject() throws Exception {
+        new Expectations(tested) {{
+            invoke(tested, "deleteAsync"); result = CompletableFuture.completedFuture(response);
+            response.readEntity(String.class); result = value;
+        }};
+        assertThat(tested.deleteAsync(String.class).get()).isSameAs(value);
+    }
+
+    @Test
+    public void testResilience(@Mocked ResiliencePolicy policy) throws Exception {
+        final RestClient result = tested.resilience(policy);
+        assertThat(result).isNotSameAs(tested);
+
+        final ResiliencePolicy resultPolicy = getField(result, policyField);
+        assertThat(resultPolicy).isSameAs(policy);
+    }
+
+    @Test
+    public void testGetWithPolicy(@Mocked ResiliencePolicy policy) throws Exception {
+        new Expectations() {{
+            policy.execute(true, withAny(NO_CALL)); result = CompletableFuture.completedFuture(response);
+        }};
+        assertThat(tested.resilience(policy).get()).isSameAs(response);
+        new Verifications() {{
+            builder.get(); times = 0;
+        }};
+    }
+
+    @Test
+    public void testPostWithPolicy(@Mocked ResiliencePolicy policy) throws Exception {
+        new Expectations() {{
+            policy.execute(false, withAny(NO_CALL)); result = CompletableFuture.completedFuture(response);
+        }};
+        assertThat(tested.resilience(policy).post(entity)).isSameAs(response);
+    }
+
+    @Test
+    public void testPutAsyncWithPolicy(@Mocked ResiliencePolicy policy) throws Exception {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        new Expectations() {{
+            policy.execute(true, withAny(NO_CALL)); result = future;
+        }};
+        assertThat(tested.resilience(policy).putAsync(entity)).isSameAs(future);
+    }
+
+    @Test(expectedExceptions = ProcessingException.class)
+    public void testDeleteWithPolicyFailed(@Mocked ResiliencePolicy policy) throws Exception {
+        final CompletableFuture<Response> future = new CompletableFuture<>();
+        future.completeExceptionally(new ProcessingException(value));
+        new Expectations() {{
+            policy.execute(true, withAny(NO_CALL)); result = future;
+        }};
+        tested.resilience(policy).delete();
+    }
+
     @Test
     public void testCurrentPath() throws Exception {
         tested.currentPath();
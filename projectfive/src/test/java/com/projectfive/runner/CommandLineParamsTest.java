@@ -1,7 +1,11 @@
 package com.projectfive.runner;
 
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
 import org.testng.annotations.Test;
+import org.testng.xml.XmlSuite.ParallelMode;
 
+import static mockit.Deencapsulation.newInstance;
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -23,4 +27,51 @@ public class CommandLineParamsTest {
     public void testGetEnvironment() throws Exception {
         assertThat(params.getEnvironment()).isEqualTo("test");
     }
+
+    @Test(dependsOnMethods = "testGet")
+    public void testParallelDefaults() throws Exception {
+        assertThat(params.getParallel()).isEqualTo(ParallelMode.NONE);
+        assertThat(params.isParallel()).isFalse();
+        assertThat(params.getThreadCount()).isEqualTo(5);
+        assertThat(params.getDataProviderThreadCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        final CommandLineParams parsed = newInstance(CommandLineParams.class);
+        new JCommander(parsed, "-parallel=Methods", "-threads=16", "-dataProviderThreads=4");
+        assertThat(parsed.getParallel()).isEqualTo(ParallelMode.METHODS);
+        assertThat(parsed.isParallel()).isTrue();
+        assertThat(parsed.getThreadCount()).isEqualTo(16);
+        assertThat(parsed.getDataProviderThreadCount()).isEqualTo(4);
+    }
+
+    @Test(
+            expectedExceptions = ParameterException.class,
+            expectedExceptionsMessageRegExp = "Selected parallel mode \\[threads\\] is unknown.*"
+    )
+    public void testParallelUnknown() throws Exception {
+        new JCommander(newInstance(CommandLineParams.class), "-parallel=threads");
+    }
+
+    @Test(expectedExceptions = ParameterException.class)
+    public void testParallelDeprecated() throws Exception {
+        new JCommander(newInstance(CommandLineParams.class), "-parallel=true");
+    }
+
+    @Test(
+            expectedExceptions = ParameterException.class,
+            expectedExceptionsMessageRegExp = "Parameter -threads should be at least 1 \\(found 0\\)"
+    )
+    public void testThreadsTooFew() throws Exception {
+        new JCommander(newInstance(CommandLineParams.class), "-threads=0");
+    }
+
+    @Test(
+            expectedExceptions = ParameterException.class,
+            expectedExceptionsMessageRegExp = "Parameter -dataProviderThreads should be a number \\(found many\\)"
+    )
+    public void testThreadsNotANumber() throws Exception {
+        new JCommander(newInstance(CommandLineParams.class), "-dataProviderThreads=many");
+    }
 }
@@ -0,0 +1,135 @@
+package com.projectfive.runner;
+
+import mockit.Expectations;
+import mockit.Mocked;
+import org.testng.ITestContext;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static mockit.Deencapsulation.getField;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author <a href="mailto:JGraham@aimconsulting.com">Justin Graham</a>
+ * @since 2/15/16
+ */
+@Test(groups = "unit")
+public class TestReporterTest {
+
+    @Mocked ITestResult first;
+    @Mocked ITestResult second;
+    @Mocked ITestContext context;
+    @Mocked ITestNGMethod firstMethod;
+    @Mocked ITestNGMethod secondMethod;
+
+    private final String firstClass = "FirstTest";
+    private final String secondClass = "SecondTest";
+
+    // Field names used for verification
+    private final String pendingOutputField = "pendingOutput";
+    private final String finishedInvocationsField = "finishedInvocations";
+    private final String currentInstanceField = "currentInstance";
+
+    @Test
+    public void testSerialOutput() throws Exception {
+        new Expectations() {{
+            first.getInstanceName(); result = firstClass;
+            second.getInstanceName(); result = secondClass;
+        }};
+        final TestReporter tested = new TestReporter();
+        tested.onTestStart(first);
+        tested.onTestSuccess(first);
+        assertThat((String) getField(tested, currentInstanceField)).isEqualTo(firstClass);
+
+        tested.onTestStart(second);
+        assertThat((String) getField(tested, currentInstanceField)).isEqualTo(secondClass);
+
+        final Map<String, List<Runnable>> pending = getField(tested, pendingOutputField);
+        assertThat(pending).isEmpty();
+    }
+
+    @Test
+    public void testParallelOutputGrouped() throws Exception {
+        new Expectations() {{
+            context.getAllTestMethods(); result = new ITestNGMethod[] {firstMethod, secondMethod};
+            firstMethod.getTestClass().getName(); result = firstClass;
+            firstMethod.getMethodName(); result = "first";
+            firstMethod.getInvocationCount(); result = 1;
+            firstMethod.getParameterInvocationCount(); result = 2;
+            secondMethod.getTestClass().getName(); result = secondClass;
+            secondMethod.getMethodName(); result = "second";
+            first.getInstanceName(); result = firstClass;
+            first.getMethod(); result = firstMethod;
+            second.getInstanceName(); result = secondClass;
+            second.getMethod(); result = secondMethod;
+        }};
+        final TestReporter tested = new TestReporter(true);
+        tested.onStart(context);
+        tested.onTestStart(first);
+        tested.onTestStart(second);
+        tested.onTestSuccess(first);
+
+        final Map<String, List<Runnable>> pending = getField(tested, pendingOutputField);
+        assertThat(pending).containsOnlyKeys(firstClass, secondClass);
+        assertThat(pending.get(firstClass)).hasSize(2);
+
+        tested.onTestSuccess(second);
+        assertThat(pending).containsOnlyKeys(firstClass);
+
+        tested.onTestSkipped(first);
+        assertThat(pending).isEmpty();
+    }
+
+    @Test
+    public void testParallelOutputFlushedOnFinish() throws Exception {
+        new Expectations() {{
+            first.getInstanceName(); result = firstClass;
+        }};
+        final TestReporter tested = new TestReporter(true);
+        tested.onConfigurationFailure(first);
+
+        final Map<String, List<Runnable>> pending = getField(tested, pendingOutputField);
+        assertThat(pending).containsOnlyKeys(firstClass);
+
+        tested.onFinish(context);
+        assertThat(pending).isEmpty();
+    }
+
+    @Test
+    public void testFailedTestsConcurrent() throws Exception {
+        new Expectations() {{
+            first.getInstanceName(); result = firstClass;
+            first.getThrowable(); returns(new AssertionError(firstClass));
+            first.getMethod(); result = firstMethod;
+            firstMethod.getParameterInvocationCount(); result = 2000;
+        }};
+        final TestReporter tested = new TestReporter(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> failures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                failures.add(executor.submit(() -> tested.onTestFailure(first)));
+            }
+            for (Future<?> failure : failures) {
+                failure.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(tested.getFailedTests()).hasSize(1000);
+        assertThat(tested.getFailedTests().get(0)).isSameAs(first);
+
+        final Map<String, List<Runnable>> pending = getField(tested, pendingOutputField);
+        assertThat(pending.get(firstClass)).hasSize(1000);
+        final Map<String, Integer> finished = getField(tested, finishedInvocationsField);
+        assertThat(finished.values()).containsExactly(1000);
+    }
+}
@@ -11,7 +11,7 @@ import org.testng.ITestResult;
 import org.testng.TestListenerAdapter;
 import org.testng.TestNG;
 import org.testng.annotations.Test;
-
+import org.testng.xml.XmlSuite.ParallelMode;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -52,6 +52,28 @@ public class TestRunnerTest {
         TestRunner.main(new String[0]);
     }
 
+    @Test
+    public void testMainParallel() throws Exception {
+        final ParallelMode parallel = ParallelMode.METHODS;
+        final int threads = 16;
+        final int dataProviderThreads = 4;
+        new Expectations(TestRunner.class) {{
+            invoke(TestRunner.class, GET_TESTS);
+            params.getParallel(); result = parallel;
+            params.isParallel(); result = true;
+            params.getThreadCount(); result = threads;
+            params.getDataProviderThreadCount(); result = dataProviderThreads;
+            testNG.hasFailure(); result = false;
+        }};
+        TestRunner.main(new String[0]);
+        new Verifications() {{
+            new TestReporter(true);
+            testNG.setParallel(parallel);
+            testNG.setThreadCount(threads);
+            testNG.setDataProviderThreadCount(dataProviderThreads);
+        }};
+    }
+
     @Test
     public void testMainFailure() throws Exception {
         new Expectations(TestRunner.class) {{
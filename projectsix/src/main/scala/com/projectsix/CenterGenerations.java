@@ -0,0 +1,247 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
+import co.cask.cdap.api.dataset.lib.ObjectStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Versioned sets of centers in the {@code centers} dataset. Every set is written as a new generation, keyed by
+ * the generation followed by the index of the center, and only becomes visible once the
+ * {@link KMeansState#GENERATION_KEY} pointer is switched to it. Readers follow the pointer, so they never see
+ * a mix of two sets, and the last {@link #RETAINED} generations are kept to roll back to.
+ *
+ * Generations are published both by runs of the Spark program and, far more often, by the
+ * {@link SparkKMeansApp.CentersUpdater}. So that a rollback can still reach the centers of a run once the
+ * updater published more than {@link #RETAINED} generations since, the last {@link #RETAINED} generations of
+ * runs are kept as well. Every generation stores the amount of points each of its centers represents.
+ */
+public final class CenterGenerations {
+
+  /**
+   * Amount of generations kept in the dataset.
+   */
+  public static final int RETAINED = 5;
+
+  private CenterGenerations() {
+  }
+
+  /**
+   * Returns the generation readers currently see, {@code 0} if none was ever activated.
+   */
+  public static long active(KeyValueTable state) {
+    byte[] generation = state.read(KMeansState.GENERATION_KEY);
+    return generation == null ? 0L : Bytes.toLong(generation);
+  }
+
+  /**
+   * Returns the newest generation written, which need not be the active one after a rollback.
+   */
+  public static long latest(KeyValueTable state) {
+    byte[] latest = state.read(KMeansState.LATEST_KEY);
+    return latest == null ? active(state) : Bytes.toLong(latest);
+  }
+
+  /**
+   * Writes the centers calculated by a run as a new generation, activates it and drops generations that are
+   * no longer retained.
+   *
+   * @param centers the comma separated coordinates of every center
+   * @param weights the amount of points every center represents
+   * @return the new generation
+   */
+  public static long publish(ObjectStore<String> store, KeyValueTable state, String[] centers, long[] weights) {
+    return write(store, state, centers, weights, true);
+  }
+
+  /**
+   * Writes centers moved since the last run as a new generation, activates it and drops generations that are
+   * no longer retained. Unlike the generations of runs, these are only retained while they are among the
+   * last {@link #RETAINED}.
+   *
+   * @param centers the comma separated coordinates of every center
+   * @param weights the amount of points every center represents
+   * @return the new generation
+   */
+  public static long update(ObjectStore<String> store, KeyValueTable state, String[] centers, long[] weights) {
+    return write(store, state, centers, weights, false);
+  }
+
+  /**
+   * Points readers to an earlier generation.
+   *
+   * @return {@code false} if the generation is not retained
+   */
+  public static boolean activate(ObjectStore<String> store, KeyValueTable state, long generation) {
+    if (generation <= 0 || store.read(key(generation, 0)) == null) {
+      return false;
+    }
+    state.write(KMeansState.GENERATION_KEY, Bytes.toBytes(generation));
+    return true;
+  }
+
+  /**
+   * Returns the retained generations, newest first.
+   */
+  public static List<Long> retained(ObjectStore<String> store, KeyValueTable state) {
+    Set<Long> candidates = new HashSet<>(runs(state));
+    long latest = latest(state);
+    for (long generation = latest; generation > 0 && generation > latest - RETAINED; generation--) {
+      candidates.add(generation);
+    }
+    List<Long> generations = new ArrayList<>();
+    for (long generation : candidates) {
+      if (store.read(key(generation, 0)) != null) {
+        generations.add(generation);
+      }
+    }
+    Collections.sort(generations, Collections.reverseOrder());
+    return generations;
+  }
+
+  /**
+   * Returns the amount of points every center of a generation represents, {@code null} if unknown.
+   * Generations written before they had weights of their own share the weights of the last run.
+   */
+  public static long[] weights(KeyValueTable state, long generation) {
+    byte[] weights = state.read(weightsKey(generation));
+    if (weights == null) {
+      weights = state.read(KMeansState.WEIGHTS_KEY);
+    }
+    if (weights == null) {
+      return null;
+    }
+    String[] parts = Bytes.toString(weights).split(",");
+    long[] parsed = new long[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      parsed[i] = Long.parseLong(parts[i]);
+    }
+    return parsed;
+  }
+
+  /**
+   * Reads all centers of a generation, an empty list if it is not retained.
+   */
+  public static List<String> read(ObjectStore<String> store, long generation) {
+    List<String> centers = new ArrayList<>();
+    CloseableIterator<KeyValue<byte[], String>> scanner = store.scan(key(generation, 0), key(generation + 1, 0));
+    try {
+      while (scanner.hasNext()) {
+        centers.add(scanner.next().getValue());
+      }
+    } finally {
+      scanner.close();
+    }
+    return centers;
+  }
+
+  private static long write(ObjectStore<String> store, KeyValueTable state, String[] centers, long[] weights,
+                            boolean run) {
+    if (weights.length != centers.length) {
+      throw new IllegalArgumentException(
+        String.format("Expected a weight for each of %d centers but got %d", centers.length, weights.length));
+    }
+    long generation = latest(state) + 1;
+    for (int i = 0; i < centers.length; i++) {
+      store.write(key(generation, i), centers[i]);
+    }
+    StringBuilder joined = new StringBuilder();
+    for (int i = 0; i < weights.length; i++) {
+      joined.append(i == 0 ? "" : ",").append(weights[i]);
+    }
+    state.write(weightsKey(generation), Bytes.toBytes(joined.toString()));
+
+    List<Long> runs = runs(state);
+    if (run) {
+      runs.add(0, generation);
+      if (runs.size() > RETAINED) {
+        runs = runs.subList(0, RETAINED);
+      }
+      byte[] packed = new byte[runs.size() * Bytes.SIZEOF_LONG];
+      for (int i = 0; i < runs.size(); i++) {
+        Bytes.putLong(packed, i * Bytes.SIZEOF_LONG, runs.get(i));
+      }
+      state.write(KMeansState.RUNS_KEY, packed);
+    }
+    state.write(KMeansState.LATEST_KEY, Bytes.toBytes(generation));
+    state.write(KMeansState.GENERATION_KEY, Bytes.toBytes(generation));
+    prune(store, state, generation - RETAINED + 1, new HashSet<>(runs));
+    return generation;
+  }
+
+  /**
+   * Returns the last {@link #RETAINED} generations published by runs, newest first.
+   */
+  private static List<Long> runs(KeyValueTable state) {
+    byte[] packed = state.read(KMeansState.RUNS_KEY);
+    List<Long> runs = new ArrayList<>();
+    for (int offset = 0; packed != null && offset < packed.length; offset += Bytes.SIZEOF_LONG) {
+      runs.add(Bytes.toLong(packed, offset));
+    }
+    return runs;
+  }
+
+  /**
+   * Deletes the centers and weights of the generations before {@code oldest}, except for those of runs.
+   */
+  private static void prune(ObjectStore<String> store, KeyValueTable state, long oldest, Set<Long> runs) {
+    if (oldest <= 1) {
+      return;
+    }
+    List<byte[]> expired = new ArrayList<>();
+    Set<Long> generations = new HashSet<>();
+    CloseableIterator<KeyValue<byte[], String>> scanner = store.scan(key(1, 0), key(oldest, 0));
+    try {
+      while (scanner.hasNext()) {
+        byte[] key = scanner.next().getKey();
+        long generation = Bytes.toLong(key);
+        if (!runs.contains(generation)) {
+          expired.add(key);
+          generations.add(generation);
+        }
+      }
+    } finally {
+      scanner.close();
+    }
+    for (byte[] key : expired) {
+      store.delete(key);
+    }
+    for (long generation : generations) {
+      state.delete(weightsKey(generation));
+    }
+  }
+
+  private static byte[] weightsKey(long generation) {
+    return Bytes.toBytes(KMeansState.WEIGHTS_KEY + "." + generation);
+  }
+
+  private static byte[] key(long generation, int index) {
+    byte[] key = new byte[Bytes.SIZEOF_LONG + Bytes.SIZEOF_INT];
+    Bytes.putLong(key, 0, generation);
+    Bytes.putInt(key, Bytes.SIZEOF_LONG, index);
+    return key;
+  }
+}
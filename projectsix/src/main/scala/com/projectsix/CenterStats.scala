@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix
+
+/**
+ * Coordinate sums and point counts per center, gathered over one pass of the points.
+ *
+ * Sums are kept in a single flat array, the coordinates of center `i` being stored at
+ * `[i * dim, (i + 1) * dim)`, so that accumulating a point allocates nothing.
+ */
+class CenterStats(val k: Int, val dim: Int) extends Serializable {
+
+  val sums = new Array[Double](k * dim)
+  val counts = new Array[Long](k)
+
+  /** Points that moved to a different center, only tracked by [[PrunedAssignment]]. */
+  var reassigned = 0L
+
+  /** Summed squared distance of the points to the center they were assigned to. */
+  var cost = 0.0
+
+  /**
+   * Adds the point stored at `[offset, offset + dim)` of `point` to the given center.
+   */
+  def add(center: Int, point: Array[Double], offset: Int): this.type = {
+    val base = center * dim
+    var d = 0
+    while (d < dim) {
+      sums(base + d) += point(offset + d)
+      d += 1
+    }
+    counts(center) += 1
+    this
+  }
+
+  /**
+   * Adds the stats of `other` to these, returning these.
+   */
+  def merge(other: CenterStats): this.type = {
+    require(other.k == k && other.dim == dim, "Cannot merge stats of a different shape")
+    var i = 0
+    while (i < sums.length) {
+      sums(i) += other.sums(i)
+      i += 1
+    }
+    i = 0
+    while (i < k) {
+      counts(i) += other.counts(i)
+      i += 1
+    }
+    reassigned += other.reassigned
+    cost += other.cost
+    this
+  }
+}
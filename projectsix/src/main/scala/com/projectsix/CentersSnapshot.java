@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
+import co.cask.cdap.api.dataset.lib.ObjectStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable copy of all centers of one generation, kept in memory to serve them without reading the
+ * {@code centers} dataset on every request. Besides their stored text the centers are kept as a flat array
+ * for {@link Distances} and as a {@link DistanceKernel}.
+ */
+public final class CentersSnapshot {
+
+  /**
+   * Snapshot of a store that holds no centers yet.
+   */
+  public static final CentersSnapshot EMPTY = new CentersSnapshot(0L, new String[0]);
+
+  private final long generation;
+  private final String[] centers;
+  private final int dimensions;
+  private final double[] flat;
+  private final DistanceKernel kernel;
+
+  private CentersSnapshot(long generation, String[] centers) {
+    this.generation = generation;
+    this.centers = centers;
+    this.dimensions = centers.length == 0 || centers[0] == null ? 0 : centers[0].split(",").length;
+    this.flat = new double[centers.length * dimensions];
+    for (int i = 0; i < centers.length && dimensions > 0; i++) {
+      String[] coordinates = centers[i] == null ? new String[0] : centers[i].split(",");
+      if (coordinates.length != dimensions) {
+        throw new IllegalStateException(
+          String.format("Center %d has %d coordinates, expected %d", i, coordinates.length, dimensions));
+      }
+      for (int d = 0; d < dimensions; d++) {
+        flat[i * dimensions + d] = Double.parseDouble(coordinates[d]);
+      }
+    }
+    this.kernel = dimensions == 0 ? null : new DistanceKernel(flat, dimensions);
+  }
+
+  /**
+   * Returns the generation of the stored centers, {@code 0} if none was ever recorded.
+   */
+  public static long readGeneration(KeyValueTable state) {
+    return CenterGenerations.active(state);
+  }
+
+  /**
+   * Reads all centers of the current generation.
+   */
+  public static CentersSnapshot load(ObjectStore<String> store, KeyValueTable state) {
+    long generation = readGeneration(state);
+    List<String> centers = CenterGenerations.read(store, generation);
+    if (!centers.isEmpty()) {
+      return new CentersSnapshot(generation, centers.toArray(new String[centers.size()]));
+    }
+
+    // Centers stored by index alone, before they were stored by generation
+    byte[] count = state.read(KMeansState.COUNT_KEY);
+    if (count != null) {
+      for (int i = 0; i < Bytes.toInt(count); i++) {
+        centers.add(store.read(Bytes.toBytes(i)));
+      }
+    } else {
+      // Centers written before the count was recorded, read until the first gap
+      String center = store.read(Bytes.toBytes(0));
+      while (center != null) {
+        centers.add(center);
+        center = store.read(Bytes.toBytes(centers.size()));
+      }
+    }
+    return new CentersSnapshot(generation, centers.toArray(new String[centers.size()]));
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Returns the entity tag identifying this generation in HTTP responses.
+   */
+  public String getETag() {
+    return "\"" + generation + "\"";
+  }
+
+  public int size() {
+    return centers.length;
+  }
+
+  /**
+   * Returns the comma separated coordinates of the center at {@code index}, or {@code null} if there is none.
+   */
+  public String get(int index) {
+    return index >= 0 && index < centers.length ? centers[index] : null;
+  }
+
+  /**
+   * Returns the amount of coordinates of every center, {@code 0} if there are no centers.
+   */
+  public int getDimensions() {
+    return dimensions;
+  }
+
+  /**
+   * Returns a copy of all centers in a flat array, the coordinates of center {@code i} being stored at
+   * {@code [i * dimensions, (i + 1) * dimensions)}.
+   */
+  public double[] toArray() {
+    return flat.clone();
+  }
+
+  /**
+   * Returns the index of the center closest to the point stored at {@code point[offset]}.
+   */
+  public int nearest(double[] point, int offset) {
+    return Distances.nearest(point, offset, flat, dimensions);
+  }
+
+  /**
+   * Returns the index of the center closest to the point stored at {@code point[offset]}, using
+   * {@code distances} to hold the distances to all centers, which saves allocating them for every point.
+   */
+  public int nearest(double[] point, int offset, double[] distances) {
+    return kernel.nearest(point, offset, distances);
+  }
+
+  /**
+   * Returns all centers, one per line.
+   */
+  public String toText() {
+    StringBuilder builder = new StringBuilder();
+    for (String center : centers) {
+      builder.append(center).append('\n');
+    }
+    return builder.toString();
+  }
+}
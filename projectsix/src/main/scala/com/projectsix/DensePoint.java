@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Represents a point in a space of any amount of dimensions.
+ */
+public class DensePoint implements Serializable {
+
+  private final double[] coordinates;
+
+  /**
+   * Creates an instance with the given coordinates. The array is owned by the point from now on.
+   */
+  public DensePoint(double[] coordinates) {
+    this.coordinates = coordinates;
+  }
+
+  public int getDimensions() {
+    return coordinates.length;
+  }
+
+  public double get(int dimension) {
+    return coordinates[dimension];
+  }
+
+  /**
+   * Copies the coordinates to {@code target}, starting at {@code offset}.
+   */
+  public void copyTo(double[] target, int offset) {
+    System.arraycopy(coordinates, 0, target, offset, coordinates.length);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return this == o || (o instanceof DensePoint && Arrays.equals(coordinates, ((DensePoint) o).coordinates));
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(coordinates);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(coordinates);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+/**
+ * Computes the distances from a point to all centers at once. The centers are kept transposed, coordinate
+ * {@code d} of center {@code i} being stored at {@code [d * k + i]}, so the innermost loop runs over the centers
+ * with the coordinate of the point fixed. That loop has no dependency between iterations, which lets the JIT
+ * compile it to SIMD instructions, where {@link Distances} sums up one center at a time.
+ *
+ * <p>The squared distances are summed in the same order as by {@link Distances#squared}, so both give the same
+ * results to the last bit. A kernel is immutable and can be shared between threads, each passing its own
+ * array to receive the distances.</p>
+ */
+public final class DistanceKernel {
+
+  private final int k;
+  private final int dimensions;
+  private final double[] transposed;
+
+  /**
+   * @param centers the centers in the flat layout of {@link Distances}
+   */
+  public DistanceKernel(double[] centers, int dimensions) {
+    if (dimensions <= 0 || centers.length % dimensions != 0) {
+      throw new IllegalArgumentException("Expected centers of " + dimensions + " dimensions");
+    }
+    this.k = centers.length / dimensions;
+    this.dimensions = dimensions;
+    this.transposed = new double[centers.length];
+    for (int i = 0; i < k; i++) {
+      for (int d = 0; d < dimensions; d++) {
+        transposed[d * k + i] = centers[i * dimensions + d];
+      }
+    }
+  }
+
+  /**
+   * Returns the amount of centers.
+   */
+  public int size() {
+    return k;
+  }
+
+  public int getDimensions() {
+    return dimensions;
+  }
+
+  /**
+   * Stores the squared distance from the point stored at {@code point[offset]} to center {@code i} in
+   * {@code distances[i]}.
+   */
+  public void squaredDistances(double[] point, int offset, double[] distances) {
+    double coordinate = point[offset];
+    for (int i = 0; i < k; i++) {
+      double diff = transposed[i] - coordinate;
+      distances[i] = diff * diff;
+    }
+    for (int d = 1; d < dimensions; d++) {
+      int base = d * k;
+      coordinate = point[offset + d];
+      for (int i = 0; i < k; i++) {
+        double diff = transposed[base + i] - coordinate;
+        distances[i] += diff * diff;
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the center closest to the point stored at {@code point[offset]}, leaving the squared
+   * distances to all centers in {@code distances}. Of equally close centers the one with the lowest index wins.
+   */
+  public int nearest(double[] point, int offset, double[] distances) {
+    squaredDistances(point, offset, distances);
+    return nearest(distances, k);
+  }
+
+  /**
+   * Returns the index of the smallest of the first {@code count} distances, the lowest index on ties.
+   */
+  private static int nearest(double[] distances, int count) {
+    int bestIndex = 0;
+    double closest = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      if (distances[i] < closest) {
+        closest = distances[i];
+        bestIndex = i;
+      }
+    }
+    return bestIndex;
+  }
+}
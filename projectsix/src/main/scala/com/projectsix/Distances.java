@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+/**
+ * Distance computations over points and centers stored in flat arrays, the coordinates of center {@code i}
+ * being stored at {@code [i * dimensions, (i + 1) * dimensions)}.
+ */
+public final class Distances {
+
+  private Distances() {
+  }
+
+  /**
+   * Returns the squared euclidean distance between the points stored at {@code a[aOffset]} and
+   * {@code b[bOffset]}.
+   */
+  public static double squared(double[] a, int aOffset, double[] b, int bOffset, int dimensions) {
+    double sum = 0.0;
+    for (int d = 0; d < dimensions; d++) {
+      double diff = a[aOffset + d] - b[bOffset + d];
+      sum += diff * diff;
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the index of the center closest to the point stored at {@code point[offset]}. Of equally close
+   * centers the one with the lowest index wins.
+   */
+  public static int nearest(double[] point, int offset, double[] centers, int dimensions) {
+    return nearest(point, offset, centers, 0, centers.length / dimensions, dimensions);
+  }
+
+  /**
+   * Returns the index of the center closest to the point stored at {@code point[offset]} among the
+   * {@code count} centers starting at center {@code first}, counting from {@code first}. Of equally close
+   * centers the one with the lowest index wins.
+   */
+  public static int nearest(double[] point, int offset, double[] centers, int first, int count, int dimensions) {
+    int bestIndex = 0;
+    double closest = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      double distance = squared(point, offset, centers, (first + i) * dimensions, dimensions);
+      if (distance < closest) {
+        closest = distance;
+        bestIndex = i;
+      }
+    }
+    return bestIndex;
+  }
+
+  /**
+   * Returns the squared distance from the point stored at {@code point[offset]} to the closest center.
+   */
+  public static double nearestSquared(double[] point, int offset, double[] centers, int dimensions) {
+    int k = centers.length / dimensions;
+    double closest = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < k; i++) {
+      closest = Math.min(closest, squared(point, offset, centers, i * dimensions, dimensions));
+    }
+    return closest;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+/**
+ * Single precision variant of {@link DistanceKernel}, for points and centers kept as {@code float}. Twice as
+ * many distances fit in a SIMD register, at the cost of rounding every distance to about 7 significant digits,
+ * so centers that are nearly equally close to a point may be ranked differently than in double precision.
+ */
+public final class FloatDistanceKernel {
+
+  private final int k;
+  private final int dimensions;
+  private final float[] transposed;
+
+  /**
+   * @param centers the centers in the flat layout of {@link Distances}
+   */
+  public FloatDistanceKernel(float[] centers, int dimensions) {
+    if (dimensions <= 0 || centers.length % dimensions != 0) {
+      throw new IllegalArgumentException("Expected centers of " + dimensions + " dimensions");
+    }
+    this.k = centers.length / dimensions;
+    this.dimensions = dimensions;
+    this.transposed = new float[centers.length];
+    for (int i = 0; i < k; i++) {
+      for (int d = 0; d < dimensions; d++) {
+        transposed[d * k + i] = centers[i * dimensions + d];
+      }
+    }
+  }
+
+  /**
+   * Returns the amount of centers.
+   */
+  public int size() {
+    return k;
+  }
+
+  public int getDimensions() {
+    return dimensions;
+  }
+
+  /**
+   * Stores the squared distance from the point stored at {@code point[offset]} to center {@code i} in
+   * {@code distances[i]}.
+   */
+  public void squaredDistances(float[] point, int offset, float[] distances) {
+    float coordinate = point[offset];
+    for (int i = 0; i < k; i++) {
+      float diff = transposed[i] - coordinate;
+      distances[i] = diff * diff;
+    }
+    for (int d = 1; d < dimensions; d++) {
+      int base = d * k;
+      coordinate = point[offset + d];
+      for (int i = 0; i < k; i++) {
+        float diff = transposed[base + i] - coordinate;
+        distances[i] += diff * diff;
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the center closest to the point stored at {@code point[offset]}, leaving the squared
+   * distances to all centers in {@code distances}. Of equally close centers the one with the lowest index wins.
+   */
+  public int nearest(float[] point, int offset, float[] distances) {
+    squaredDistances(point, offset, distances);
+    int bestIndex = 0;
+    float closest = Float.POSITIVE_INFINITY;
+    for (int i = 0; i < k; i++) {
+      if (distances[i] < closest) {
+        closest = distances[i];
+        bestIndex = i;
+      }
+    }
+    return bestIndex;
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
+import co.cask.cdap.api.metrics.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How far a points reader lags behind the producers of the stream: the time from an event being written to
+ * the stream until the reader processed it. Every batch is reported through the metrics of the reader:
+ *
+ * <ul>
+ *   <li>{@code ingest.lag.le.1s} up to {@code ingest.lag.le.1h} and {@code ingest.lag.gt.1h}: counters
+ *   making up a histogram of the lag of every event</li>
+ *   <li>{@code ingest.lag.max.millis}: the largest lag within the batch</li>
+ *   <li>{@code ingest.batch.millis} and {@code ingest.batch.points}: the time spent on and the points
+ *   written by the batch</li>
+ *   <li>{@code ingest.batch.overLatency} and {@code ingest.batch.overSize}: counters of batches that broke
+ *   the latency or size budget of the reader</li>
+ * </ul>
+ *
+ * <p>Every reader instance also records its last batch in the {@value KMeansState#DATASET} dataset, under
+ * its own key so that instances never conflict, for the health endpoint of the {@code CentersService} to
+ * compare against the latency and size budgets, see {@link #isLagging(Map)}.</p>
+ */
+public final class IngestLag {
+
+  private static final long[] BUCKET_MILLIS = { 1000L, 10000L, 60000L, 600000L, 3600000L };
+  private static final String[] BUCKET_NAMES = { "le.1s", "le.10s", "le.1m", "le.10m", "le.1h", "gt.1h" };
+
+  private final byte[] key;
+  private final long maxLatencyMillis;
+  private final int maxBatchPoints;
+  private final int[] buckets = new int[BUCKET_NAMES.length];
+
+  private long batchStart;
+  private long maxLag;
+  private int batchPoints;
+
+  /**
+   * @param reader name of the reader instance, unique within the flow
+   * @param maxLatencyMillis lag a batch should stay within
+   * @param maxBatchPoints amount of points a batch should stay within, {@code 0} for no limit
+   */
+  public IngestLag(String reader, long maxLatencyMillis, int maxBatchPoints) {
+    this.key = Bytes.toBytes(KMeansState.INGEST_PREFIX + reader);
+    this.maxLatencyMillis = maxLatencyMillis;
+    this.maxBatchPoints = maxBatchPoints;
+  }
+
+  /**
+   * Marks the start of a batch.
+   */
+  public void startBatch() {
+    batchStart = System.currentTimeMillis();
+    maxLag = 0L;
+    batchPoints = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = 0;
+    }
+  }
+
+  /**
+   * Records an event written to the stream at {@code timestamp}, as it is processed.
+   */
+  public void event(long timestamp) {
+    long lag = Math.max(0L, System.currentTimeMillis() - timestamp);
+    maxLag = Math.max(maxLag, lag);
+    int bucket = 0;
+    while (bucket < BUCKET_MILLIS.length && lag > BUCKET_MILLIS[bucket]) {
+      bucket++;
+    }
+    buckets[bucket]++;
+  }
+
+  /**
+   * Records points written by the batch.
+   */
+  public void points(int count) {
+    batchPoints += count;
+  }
+
+  /**
+   * Reports the batch started last and records it in the state dataset, as part of the batch's transaction.
+   */
+  public void endBatch(Metrics metrics, KeyValueTable state) {
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < buckets.length; i++) {
+      if (buckets[i] > 0) {
+        metrics.count("ingest.lag." + BUCKET_NAMES[i], buckets[i]);
+      }
+    }
+    metrics.gauge("ingest.lag.max.millis", maxLag);
+    metrics.gauge("ingest.batch.millis", now - batchStart);
+    metrics.gauge("ingest.batch.points", batchPoints);
+    if (maxLag > maxLatencyMillis) {
+      metrics.count("ingest.batch.overLatency", 1);
+    }
+    if (maxBatchPoints > 0 && batchPoints > maxBatchPoints) {
+      metrics.count("ingest.batch.overSize", 1);
+    }
+    byte[] lag = Bytes.add(Bytes.toBytes(now), Bytes.toBytes(maxLag), Bytes.toBytes(maxLatencyMillis));
+    state.write(key, Bytes.add(lag, Bytes.toBytes((long) batchPoints), Bytes.toBytes((long) maxBatchPoints)));
+  }
+
+  /**
+   * Tells whether the last batch of a reader, as read by {@link #readAll(KeyValueTable)}, broke its latency
+   * or its size budget.
+   */
+  public static boolean isLagging(Map<String, Long> reader) {
+    return reader.get("lagMillis") > reader.get("maxLatencyMillis") ||
+      (reader.get("maxBatchPoints") > 0 && reader.get("batchPoints") > reader.get("maxBatchPoints"));
+  }
+
+  /**
+   * Reads the last batch recorded by every reader instance, as maps holding its {@code committedAt} time,
+   * its {@code lagMillis} and {@code maxLatencyMillis}, and its {@code batchPoints} and
+   * {@code maxBatchPoints}, keyed by the name of the reader. Batches recorded without their size count as
+   * {@code 0} points without a limit.
+   */
+  public static Map<String, Map<String, Long>> readAll(KeyValueTable state) {
+    Map<String, Map<String, Long>> readers = new LinkedHashMap<>();
+    byte[] start = Bytes.toBytes(KMeansState.INGEST_PREFIX);
+    CloseableIterator<KeyValue<byte[], byte[]>> scanner = state.scan(start, Bytes.stopKeyForPrefix(start));
+    try {
+      while (scanner.hasNext()) {
+        KeyValue<byte[], byte[]> entry = scanner.next();
+        Map<String, Long> reader = new LinkedHashMap<>();
+        reader.put("committedAt", Bytes.toLong(entry.getValue(), 0));
+        reader.put("lagMillis", Bytes.toLong(entry.getValue(), Bytes.SIZEOF_LONG));
+        reader.put("maxLatencyMillis", Bytes.toLong(entry.getValue(), 2 * Bytes.SIZEOF_LONG));
+        boolean sized = entry.getValue().length >= 5 * Bytes.SIZEOF_LONG;
+        reader.put("batchPoints", sized ? Bytes.toLong(entry.getValue(), 3 * Bytes.SIZEOF_LONG) : 0L);
+        reader.put("maxBatchPoints", sized ? Bytes.toLong(entry.getValue(), 4 * Bytes.SIZEOF_LONG) : 0L);
+        readers.put(Bytes.toString(entry.getKey()).substring(KMeansState.INGEST_PREFIX.length()), reader);
+      }
+    } finally {
+      scanner.close();
+    }
+    return readers;
+  }
+}
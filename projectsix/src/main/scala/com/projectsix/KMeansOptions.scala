@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix
+
+/**
+ * Options of a [[SparkKMeansProgram]] run, parsed from the space separated `args` runtime argument.
+ *
+ * The first two values are positional: the amount of centers to calculate and the convergence distance.
+ * Every following value is a `name=value` pair, for example `args="4 0.5 mode=minibatch fraction=0.05"`.
+ *
+ * Besides converging, a run stops after `maxIterations` iterations, once it ran for `maxSeconds` seconds, or
+ * once an iteration lowered the mean squared distance of the points to their centers by less than the
+ * `minImprovement` fraction. A budget of `0` seconds or an improvement of `0` disables these rules.
+ *
+ * With `restarts` above 1 a full run calculates that many sets of centers from different seeds at once, keeping
+ * the set with the lowest cost, see [[MultiRestart]].
+ *
+ * A run can be limited to the points written within a time range: `from` and `to` are epoch milliseconds, and
+ * `window` selects the points written in the given amount of seconds before the logical start of the run. An
+ * incremental run reads the overlap of that range with the points written since the previous run.
+ */
+case class KMeansOptions(k: Int = 2,
+                         convergeDist: Double = 0.5d,
+                         mode: String = KMeansOptions.FullMode,
+                         batchFraction: Double = 0.1d,
+                         seed: Long = 42L,
+                         init: String = KMeansOptions.RandomInit,
+                         initSteps: Int = 2,
+                         assign: String = KMeansOptions.BruteAssign,
+                         maxIterations: Int = 100,
+                         maxSeconds: Long = 0L,
+                         minImprovement: Double = 0d,
+                         restarts: Int = 1,
+                         from: Long = 0L,
+                         to: Long = 0L,
+                         window: Long = 0L) {
+
+  /**
+   * Returns the `[from, to)` time range of the points to read for a run started at `runStart`, if limited.
+   */
+  def timeRange(runStart: Long): Option[(Long, Long)] = {
+    val start = if (window > 0) math.max(from, runStart - window * 1000L) else from
+    if (start == 0L && to == 0L) None else Some((start, if (to > 0) to else Long.MaxValue))
+  }
+}
+
+object KMeansOptions {
+
+  /** Every iteration passes over all points, seeded from a random sample. */
+  final val FullMode = "full"
+
+  /** Every iteration passes over a random fraction of the points, moving the centers with decaying step sizes. */
+  final val MiniBatchMode = "minibatch"
+
+  /** Warm starts from the stored centers and only folds in points written since the last run. */
+  final val IncrementalMode = "incremental"
+
+  private final val Modes = Set(FullMode, MiniBatchMode, IncrementalMode)
+
+  /** Seeds the centers with a random sample of the points. */
+  final val RandomInit = "random"
+
+  /** Seeds the centers with k-means||, see [[ParallelInitializer]]. Also selected by `init=kmeans||`. */
+  final val ParallelInit = "parallel"
+
+  private final val Inits = Map(RandomInit -> RandomInit, ParallelInit -> ParallelInit, "kmeans||" -> ParallelInit)
+
+  /** Every point is compared with every center on every iteration. */
+  final val BruteAssign = "brute"
+
+  /** Comparisons are skipped where distance bounds allow, see [[PrunedAssignment]]. Pays off for large k. */
+  final val PrunedAssign = "pruned"
+
+  private final val Assigns = Set(BruteAssign, PrunedAssign)
+
+  def parse(args: Array[String]): KMeansOptions = {
+    val positional = args.takeWhile(arg => !arg.contains('=')).filter(_.nonEmpty)
+    val named = args.drop(positional.length).filter(_.nonEmpty).map { arg =>
+      val parts = arg.split("=", 2)
+      require(parts.length == 2, s"Expected a name=value argument but got '$arg'")
+      parts(0) -> parts(1)
+    }.toMap
+
+    val defaults = KMeansOptions()
+    val options = KMeansOptions(
+      k = if (positional.nonEmpty) positional(0).toInt else defaults.k,
+      convergeDist = if (positional.length > 1) positional(1).toDouble else defaults.convergeDist,
+      mode = named.getOrElse("mode", defaults.mode).toLowerCase,
+      batchFraction = named.get("fraction").map(_.toDouble).getOrElse(defaults.batchFraction),
+      seed = named.get("seed").map(_.toLong).getOrElse(defaults.seed),
+      init = named.get("init").map { init =>
+        Inits.getOrElse(init.toLowerCase, throw new IllegalArgumentException(
+          s"Unknown init '$init', expected one of ${Inits.keys.mkString(", ")}"))
+      }.getOrElse(defaults.init),
+      initSteps = named.get("initSteps").map(_.toInt).getOrElse(defaults.initSteps),
+      assign = named.getOrElse("assign", defaults.assign).toLowerCase,
+      maxIterations = named.get("maxIterations").map(_.toInt).getOrElse(defaults.maxIterations),
+      maxSeconds = named.get("maxSeconds").map(_.toLong).getOrElse(defaults.maxSeconds),
+      minImprovement = named.get("minImprovement").map(_.toDouble).getOrElse(defaults.minImprovement),
+      restarts = named.get("restarts").map(_.toInt).getOrElse(defaults.restarts),
+      from = named.get("from").map(_.toLong).getOrElse(defaults.from),
+      to = named.get("to").map(_.toLong).getOrElse(defaults.to),
+      window = named.get("window").map(_.toLong).getOrElse(defaults.window))
+
+    require(options.k > 0, s"Amount of centers must be positive but was ${options.k}")
+    require(Modes.contains(options.mode), s"Unknown mode '${options.mode}', expected one of ${Modes.mkString(", ")}")
+    require(options.batchFraction > 0 && options.batchFraction <= 1,
+            s"Mini-batch fraction must be in (0, 1] but was ${options.batchFraction}")
+    require(options.initSteps > 0, s"Init steps must be positive but was ${options.initSteps}")
+    require(Assigns.contains(options.assign),
+            s"Unknown assign '${options.assign}', expected one of ${Assigns.mkString(", ")}")
+    require(options.maxIterations > 0, s"Max iterations must be positive but was ${options.maxIterations}")
+    require(options.maxSeconds >= 0, s"Max seconds must not be negative but was ${options.maxSeconds}")
+    require(options.minImprovement >= 0 && options.minImprovement < 1,
+            s"Min improvement must be in [0, 1) but was ${options.minImprovement}")
+    require(options.restarts > 0, s"Restarts must be positive but was ${options.restarts}")
+    require(options.restarts == 1 || (options.mode == FullMode && options.assign == BruteAssign),
+            s"Restarts are only supported by mode=$FullMode with assign=$BruteAssign")
+    require(options.from >= 0 && options.to >= 0 && options.window >= 0,
+            s"Time range must not be negative but was from=${options.from} to=${options.to} window=${options.window}")
+    require(options.to == 0 || options.from < options.to,
+            s"Time range must end after it starts but was from=${options.from} to=${options.to}")
+    options
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+/**
+ * Names of the {@value #DATASET} dataset and of the keys it holds, shared by the Spark program that writes
+ * them and the programs that read them.
+ */
+public final class KMeansState {
+
+  /**
+   * Dataset holding the bookkeeping of the last KMeans run.
+   */
+  public static final String DATASET = "kmeansState";
+
+  /**
+   * Timestamp up to which points were included in the stored centers.
+   */
+  public static final String WATERMARK_KEY = "watermark";
+
+  /**
+   * Comma separated amounts of points every stored center represents. Followed by {@code .} and a generation,
+   * the weights of the centers of that generation.
+   */
+  public static final String WEIGHTS_KEY = "weights";
+
+  /**
+   * Generation of centers readers should use, see {@link CenterGenerations}.
+   */
+  public static final String GENERATION_KEY = "generation";
+
+  /**
+   * Newest generation of centers written.
+   */
+  public static final String LATEST_KEY = "latest";
+
+  /**
+   * Generations of centers published by runs of the Spark program, newest first.
+   */
+  public static final String RUNS_KEY = "runs";
+
+  /**
+   * Amount of centers stored by index alone, before centers were stored by generation.
+   */
+  public static final String COUNT_KEY = "count";
+
+  /**
+   * Prefix of the keys under which every points reader instance records its last batch, see
+   * {@link IngestLag}.
+   */
+  public static final String INGEST_PREFIX = "ingest.";
+
+  private KMeansState() {
+  }
+}
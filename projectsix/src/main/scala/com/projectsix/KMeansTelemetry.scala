@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix
+
+import java.util.concurrent.atomic.AtomicLong
+
+import co.cask.cdap.api.metrics.Metrics
+import org.apache.spark.SparkContext
+import org.apache.spark.scheduler.{SparkListener, SparkListenerTaskEnd}
+import org.slf4j.{Logger, LoggerFactory}
+
+/**
+ * Reports the progress of a KMeans run through the CDAP metrics of the program, one set of gauges per
+ * iteration:
+ *
+ *  - `iteration`: number of the iteration that just finished, counting from 1
+ *  - `iteration.millis`: wall time of the iteration
+ *  - `iteration.delta.micros`: summed squared movement of the centers, in millionths
+ *  - `iteration.reassigned`: points that moved to another center, only known with `assign=pruned`
+ *  - `iteration.points`: points assigned in the iteration
+ *  - `cluster.size.min`, `cluster.size.max` and `clusters.empty`: spread of the cluster sizes
+ *  - `iteration.shuffle.bytes`: bytes written to and read from shuffles
+ *  - `iteration.result.bytes`: bytes of task results sent to the driver
+ *
+ * The `iterations` counter adds up the iterations of all runs. Byte counts come from Spark listener events,
+ * which arrive asynchronously, so a few tasks may be attributed to the next iteration.
+ */
+class KMeansTelemetry(sc: SparkContext, metrics: Metrics) {
+
+  import KMeansTelemetry._
+
+  private val shuffleBytes = new AtomicLong()
+  private val resultBytes = new AtomicLong()
+  private var iterationStart = System.currentTimeMillis()
+  private var shuffleBytesBefore = 0L
+  private var resultBytesBefore = 0L
+
+  sc.addSparkListener(new SparkListener {
+    override def onTaskEnd(taskEnd: SparkListenerTaskEnd) {
+      Option(taskEnd.taskMetrics).foreach { taskMetrics =>
+        taskMetrics.shuffleWriteMetrics.foreach(write => shuffleBytes.addAndGet(write.shuffleBytesWritten))
+        taskMetrics.shuffleReadMetrics.foreach(read => shuffleBytes.addAndGet(read.totalBytesRead))
+        resultBytes.addAndGet(taskMetrics.resultSize)
+      }
+    }
+  })
+
+  /**
+   * Marks the start of an iteration.
+   */
+  def startIteration() {
+    iterationStart = System.currentTimeMillis()
+    shuffleBytesBefore = shuffleBytes.get
+    resultBytesBefore = resultBytes.get
+  }
+
+  /**
+   * Reports the iteration started last, `reassigned` being negative if it is not known.
+   */
+  def endIteration(iteration: Int, delta: Double, stats: CenterStats, reassigned: Long) {
+    val millis = System.currentTimeMillis() - iterationStart
+    val shuffled = shuffleBytes.get - shuffleBytesBefore
+    val results = resultBytes.get - resultBytesBefore
+    val points = stats.counts.sum
+
+    metrics.count("iterations", 1)
+    metrics.gauge("iteration", iteration)
+    metrics.gauge("iteration.millis", millis)
+    metrics.gauge("iteration.delta.micros", math.round(delta * 1e6))
+    if (reassigned >= 0) {
+      metrics.gauge("iteration.reassigned", reassigned)
+    }
+    metrics.gauge("iteration.points", points)
+    metrics.gauge("cluster.size.min", stats.counts.min)
+    metrics.gauge("cluster.size.max", stats.counts.max)
+    metrics.gauge("clusters.empty", stats.counts.count(_ == 0))
+    metrics.gauge("iteration.shuffle.bytes", shuffled)
+    metrics.gauge("iteration.result.bytes", results)
+
+    LOG.info(s"Iteration $iteration: millis=$millis delta=$delta cost=${stats.cost} points=$points " +
+               s"reassigned=$reassigned " +
+               s"sizes=${stats.counts.min}..${stats.counts.max} shuffleBytes=$shuffled resultBytes=$results")
+  }
+
+  /**
+   * Returns the bytes shuffled since the telemetry was created.
+   */
+  def totalShuffleBytes: Long = shuffleBytes.get
+}
+
+object KMeansTelemetry {
+  private final val LOG: Logger = LoggerFactory.getLogger(classOf[KMeansTelemetry])
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs the full KMeans of {@link SparkKMeansProgram} within one JVM, assigning the points on a fork-join pool.
+ * Points and centers are kept in flat arrays, the coordinates of point {@code i} being stored at
+ * {@code [i * dimensions, (i + 1) * dimensions)}, so an iteration allocates nothing per point.
+ *
+ * <p>The points are split into chunks by halving down to {@value #CHUNK_SIZE} points, depending on the amount
+ * of points alone, and the stats of the chunks are merged in that same order, so a run gives the same centers
+ * to the last bit on any pool.</p>
+ */
+public final class LocalKMeans {
+
+  /**
+   * Most points assigned by a single task, larger ranges are split in halves.
+   */
+  private static final int CHUNK_SIZE = 1024;
+
+  private final int k;
+  private final int dimensions;
+  private final int maxIterations;
+  private final double convergeDist;
+  private final ForkJoinPool pool;
+
+  /**
+   * @param convergeDist summed squared movement of the centers below which they count as converged
+   */
+  public LocalKMeans(int k, int dimensions, int maxIterations, double convergeDist, ForkJoinPool pool) {
+    if (k <= 0 || dimensions <= 0 || maxIterations <= 0) {
+      throw new IllegalArgumentException("k, dimensions and max iterations must be positive");
+    }
+    this.k = k;
+    this.dimensions = dimensions;
+    this.maxIterations = maxIterations;
+    this.convergeDist = convergeDist;
+    this.pool = pool;
+  }
+
+  /**
+   * Calculates the centers of the points, starting from the given centers.
+   */
+  public Result run(double[] points, double[] initialCenters) {
+    if (points.length % dimensions != 0 || initialCenters.length != k * dimensions) {
+      throw new IllegalArgumentException("Expected points and " + k + " centers of " + dimensions + " dimensions");
+    }
+    double[] centers = initialCenters.clone();
+    int size = points.length / dimensions;
+
+    int iteration = 0;
+    double delta;
+    Stats stats;
+    String stopReason = null;
+    do {
+      stats = pool.invoke(new AssignTask(points, new DistanceKernel(centers, dimensions), 0, size));
+      delta = 0.0;
+      for (int i = 0; i < k; i++) {
+        if (stats.counts[i] == 0) {
+          continue;
+        }
+        for (int d = 0; d < dimensions; d++) {
+          int index = i * dimensions + d;
+          double updated = stats.sums[index] / stats.counts[i];
+          delta += (updated - centers[index]) * (updated - centers[index]);
+          centers[index] = updated;
+        }
+      }
+      iteration++;
+      if (delta <= convergeDist) {
+        stopReason = RunSummary.CONVERGED;
+      } else if (iteration >= maxIterations) {
+        stopReason = RunSummary.MAX_ITERATIONS;
+      }
+    } while (stopReason == null);
+
+    return new Result(centers, stats.counts, iteration, delta, stats.cost / Math.max(1L, size), stopReason);
+  }
+
+  /**
+   * Copies the points into one flat array.
+   */
+  public static double[] flatten(Collection<DensePoint> points, int dimensions) {
+    double[] flat = new double[points.size() * dimensions];
+    int offset = 0;
+    for (DensePoint point : points) {
+      if (point.getDimensions() != dimensions) {
+        throw new IllegalArgumentException("Expected points of " + dimensions + " dimensions but found " + point);
+      }
+      point.copyTo(flat, offset);
+      offset += dimensions;
+    }
+    return flat;
+  }
+
+  /**
+   * Picks {@code k} distinct points as initial centers.
+   */
+  public static double[] sample(double[] points, int dimensions, int k, long seed) {
+    int size = points.length / dimensions;
+    if (size < k) {
+      throw new IllegalArgumentException("Cannot pick " + k + " centers from " + size + " points");
+    }
+    // Partial Fisher-Yates shuffle of the point indices
+    int[] indices = new int[size];
+    for (int i = 0; i < size; i++) {
+      indices[i] = i;
+    }
+    Random random = new Random(seed);
+    double[] centers = new double[k * dimensions];
+    for (int i = 0; i < k; i++) {
+      int pick = i + random.nextInt(size - i);
+      int index = indices[pick];
+      indices[pick] = indices[i];
+      System.arraycopy(points, index * dimensions, centers, i * dimensions, dimensions);
+    }
+    return centers;
+  }
+
+  /**
+   * Outcome of a run.
+   */
+  public static final class Result {
+
+    private final double[] centers;
+    private final long[] counts;
+    private final int iterations;
+    private final double delta;
+    private final double cost;
+    private final String stopReason;
+
+    private Result(double[] centers, long[] counts, int iterations, double delta, double cost, String stopReason) {
+      this.centers = centers;
+      this.counts = counts;
+      this.iterations = iterations;
+      this.delta = delta;
+      this.cost = cost;
+      this.stopReason = stopReason;
+    }
+
+    public double[] getCenters() {
+      return centers;
+    }
+
+    /**
+     * Returns the amount of points assigned to every center in the last iteration.
+     */
+    public long[] getCounts() {
+      return counts;
+    }
+
+    public int getIterations() {
+      return iterations;
+    }
+
+    /**
+     * Returns the summed squared movement of the centers in the last iteration.
+     */
+    public double getDelta() {
+      return delta;
+    }
+
+    /**
+     * Returns the mean squared distance of the points to their centers in the last iteration.
+     */
+    public double getCost() {
+      return cost;
+    }
+
+    /**
+     * Returns {@link RunSummary#CONVERGED} or {@link RunSummary#MAX_ITERATIONS}.
+     */
+    public String getStopReason() {
+      return stopReason;
+    }
+
+    @Override
+    public String toString() {
+      return "Result{iterations=" + iterations + ", delta=" + delta + ", cost=" + cost +
+        ", stopReason=" + stopReason + ", counts=" + Arrays.toString(counts) + "}";
+    }
+  }
+
+  /**
+   * Coordinate sums, point counts and cost per center of a range of points.
+   */
+  private final class Stats {
+
+    private final double[] sums = new double[k * dimensions];
+    private final long[] counts = new long[k];
+    private double cost;
+
+    private Stats merge(Stats other) {
+      for (int i = 0; i < sums.length; i++) {
+        sums[i] += other.sums[i];
+      }
+      for (int i = 0; i < k; i++) {
+        counts[i] += other.counts[i];
+      }
+      cost += other.cost;
+      return this;
+    }
+  }
+
+  /**
+   * Assigns the points {@code [from, to)} to their closest center, splitting ranges above {@value #CHUNK_SIZE}.
+   */
+  private final class AssignTask extends RecursiveTask<Stats> {
+
+    private final double[] points;
+    private final DistanceKernel kernel;
+    private final int from;
+    private final int to;
+
+    private AssignTask(double[] points, DistanceKernel kernel, int from, int to) {
+      this.points = points;
+      this.kernel = kernel;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Stats compute() {
+      if (to - from > CHUNK_SIZE) {
+        int middle = (from + to) >>> 1;
+        AssignTask right = new AssignTask(points, kernel, middle, to);
+        right.fork();
+        Stats left = new AssignTask(points, kernel, from, middle).compute();
+        return left.merge(right.join());
+      }
+
+      Stats stats = new Stats();
+      double[] distances = new double[k];
+      for (int p = from; p < to; p++) {
+        int offset = p * dimensions;
+        int center = kernel.nearest(points, offset, distances);
+        int base = center * dimensions;
+        for (int d = 0; d < dimensions; d++) {
+          stats.sums[base + d] += points[offset + d];
+        }
+        stats.counts[center]++;
+        stats.cost += distances[center];
+      }
+      return stats;
+    }
+  }
+}
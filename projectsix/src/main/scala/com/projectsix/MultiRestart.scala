@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix
+
+import org.apache.spark.rdd.RDD
+import org.slf4j.{Logger, LoggerFactory}
+
+/**
+ * Runs KMeans from several seeds at once. The centers of all restarts travel together, so every pass over the
+ * points serves all of them, and a restart stops taking part once it converged. In the end the restart whose
+ * centers have the lowest cost over all points wins.
+ */
+object MultiRestart {
+
+  private final val LOG: Logger = LoggerFactory.getLogger(MultiRestart.getClass)
+
+  /**
+   * Outcome of the winning restart.
+   */
+  case class Result(centers: Array[Double], counts: Array[Long], restart: Int, iterations: Int,
+                    delta: Double, meanCost: Double, stopReason: String)
+
+  /**
+   * Stats of all restarts of one pass: the stats of restart `r` are kept for centers `[r * k, (r + 1) * k)`,
+   * next to the cost of every restart.
+   */
+  class RestartStats(val restarts: Int, val k: Int, val dim: Int) extends Serializable {
+
+    val stats = new CenterStats(restarts * k, dim)
+    val costs = new Array[Double](restarts)
+
+    def merge(other: RestartStats): this.type = {
+      stats.merge(other.stats)
+      var r = 0
+      while (r < restarts) {
+        costs(r) += other.costs(r)
+        r += 1
+      }
+      this
+    }
+
+    /**
+     * Returns the stats of restart `r` alone, including its cost.
+     */
+    def restart(r: Int): CenterStats = {
+      val single = new CenterStats(k, dim)
+      Array.copy(stats.sums, r * k * dim, single.sums, 0, k * dim)
+      Array.copy(stats.counts, r * k, single.counts, 0, k)
+      single.cost = costs(r)
+      single
+    }
+  }
+
+  /**
+   * Returns the initial centers of every restart. Random seeding draws the centers of all restarts from one
+   * sample, k-means|| seeds restart `r` with `seed + r`.
+   */
+  def initialize(data: RDD[PointBlock], options: KMeansOptions, dim: Int): Array[Array[Double]] = {
+    val (k, restarts) = (options.k, options.restarts)
+    if (options.init == KMeansOptions.ParallelInit) {
+      Array.tabulate(restarts)(r => ParallelInitializer.initialize(data, k, dim, options.initSteps, options.seed + r))
+    } else {
+      // One sample serves all restarts, unless there are too few points to give every restart its own
+      val points = SparkKMeansProgram.points(data)
+      val sample = points.takeSample(withReplacement = false, restarts * k, options.seed)
+      if (sample.length == restarts * k) {
+        Array.tabulate(restarts)(r => sample.slice(r * k, (r + 1) * k).flatten)
+      } else {
+        Array.tabulate(restarts)(r => points.takeSample(withReplacement = false, k, options.seed + r).flatten)
+      }
+    }
+  }
+
+  /**
+   * Runs all restarts from their initial centers until every one of them converged or the iteration cap or
+   * time budget is reached, `started` being the time the run started.
+   */
+  def run(data: RDD[PointBlock], initial: Array[Array[Double]], options: KMeansOptions, dim: Int,
+          telemetry: KMeansTelemetry, started: Long): Result = {
+    val (k, restarts) = (options.k, initial.length)
+    val centers = initial.flatten
+    val active = Array.fill(restarts)(true)
+    val deltas = Array.fill(restarts)(Double.NaN)
+    val meanCosts = Array.fill(restarts)(Double.NaN)
+    val stopReasons = Array.fill[Option[String]](restarts)(None)
+
+    var iteration = 0
+    var stopReason: Option[String] = None
+    while (stopReason.isEmpty) {
+      telemetry.startIteration()
+      val passed = active.clone()
+      val stats = pass(data, centers, passed, k, dim)
+
+      for (r <- 0 until restarts if active(r)) {
+        var delta = 0.0
+        for (i <- r * k until (r + 1) * k if stats.stats.counts(i) > 0; d <- 0 until dim) {
+          val updated = stats.stats.sums(i * dim + d) / stats.stats.counts(i)
+          delta += (updated - centers(i * dim + d)) * (updated - centers(i * dim + d))
+          centers(i * dim + d) = updated
+        }
+        val previousMeanCost = meanCosts(r)
+        deltas(r) = delta
+        meanCosts(r) = stats.costs(r) / math.max(1L, stats.stats.counts.slice(r * k, (r + 1) * k).sum)
+        stopReasons(r) = SparkKMeansProgram.convergenceRule(options, delta, previousMeanCost, meanCosts(r))
+        active(r) = stopReasons(r).isEmpty
+      }
+      iteration += 1
+      // Report the restart that is ahead, as the restarts that already stopped have no points assigned
+      val leading = (0 until restarts).filter(passed(_)).minBy(stats.costs(_))
+      telemetry.endIteration(iteration, deltas(leading), stats.restart(leading), -1L)
+
+      // Iteration caps and time budgets apply to all restarts together
+      stopReason = if (!active.contains(true)) {
+        Some(RunSummary.CONVERGED)
+      } else {
+        SparkKMeansProgram.budgetRule(options, iteration, System.currentTimeMillis() - started)
+      }
+    }
+
+    // Compare all restarts by the cost of their final centers
+    val last = pass(data, centers, Array.fill(restarts)(true), k, dim)
+    val best = last.costs.indexOf(last.costs.min)
+    val bestCounts = last.stats.counts.slice(best * k, (best + 1) * k)
+    LOG.info(s"Restart $best of $restarts won with cost ${last.costs(best)}, costs ${last.costs.mkString(", ")}")
+    Result(centers.slice(best * k * dim, (best + 1) * k * dim), bestCounts, best, iteration, deltas(best),
+           last.costs(best) / math.max(1L, bestCounts.sum), stopReasons(best).getOrElse(stopReason.get))
+  }
+
+  /**
+   * Assigns every point to the closest center of every active restart.
+   */
+  private def pass(data: RDD[PointBlock], centers: Array[Double], active: Array[Boolean],
+                   k: Int, dim: Int): RestartStats = {
+    val restarts = active.length
+    val broadcastCenters = data.sparkContext.broadcast(centers.clone())
+    val stats = data.mapPartitions { blocks =>
+      val current = broadcastCenters.value
+      val partitionStats = new RestartStats(restarts, k, dim)
+      val point = new Array[Double](dim)
+      blocks.foreach { block =>
+        var i = 0
+        while (i < block.getSize) {
+          block.copyPoint(i, point, 0)
+          var r = 0
+          while (r < restarts) {
+            if (active(r)) {
+              val center = r * k + Distances.nearest(point, 0, current, r * k, k, dim)
+              partitionStats.stats.add(center, point, 0)
+              partitionStats.costs(r) += Distances.squared(point, 0, current, center * dim, dim)
+            }
+            r += 1
+          }
+          i += 1
+        }
+      }
+      Iterator.single(partitionStats)
+    }.treeAggregate(new RestartStats(restarts, k, dim))((a, b) => a.merge(b), (a, b) => a.merge(b))
+    broadcastCenters.unpersist()
+    stats
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix
+
+import java.util.Random
+
+import org.apache.spark.rdd.RDD
+import org.apache.spark.storage.StorageLevel
+import org.slf4j.{Logger, LoggerFactory}
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+ * Scalable KMeans++ seeding, also known as k-means|| (Bahmani et al., "Scalable K-Means++", VLDB 2012).
+ *
+ * Where KMeans++ needs a pass over the points for every center it picks, every pass of k-means|| oversamples
+ * about `2k` candidates, each point being picked with a probability proportional to its squared distance
+ * to the candidates so far. After a few passes the candidates are weighted by the amount of points closest
+ * to them and reduced to `k` centers with a weighted KMeans++ on the driver.
+ */
+object ParallelInitializer {
+
+  private final val LOG: Logger = LoggerFactory.getLogger(ParallelInitializer.getClass)
+
+  /** Iterations of Lloyd's algorithm run over the weighted candidates on the driver. */
+  private final val LocalIterations = 30
+
+  /**
+   * Returns `k` flat centers for the given points.
+   */
+  def initialize(data: RDD[PointBlock], k: Int, dim: Int, steps: Int, seed: Long): Array[Double] = {
+    val sc = data.sparkContext
+    val oversampling = 2.0 * k
+
+    val candidates = ArrayBuffer[Double]()
+    var newCandidates = SparkKMeansProgram.points(data).takeSample(withReplacement = false, 1, seed).flatten
+    candidates ++= newCandidates
+
+    // Squared distance of every point to its closest candidate, only updated with the newest candidates
+    var costs: RDD[Array[Double]] = data.map(block => Array.fill(block.getSize)(Double.PositiveInfinity))
+    var step = 0
+    var done = false
+    while (step < steps && !done) {
+      val broadcastCandidates = sc.broadcast(newCandidates)
+      val previousCosts = costs
+      costs = data.zip(previousCosts).map { case (block, blockCosts) =>
+        val latest = broadcastCandidates.value
+        val point = new Array[Double](dim)
+        val updated = new Array[Double](block.getSize)
+        var i = 0
+        while (i < block.getSize) {
+          block.copyPoint(i, point, 0)
+          updated(i) = math.min(blockCosts(i), Distances.nearestSquared(point, 0, latest, dim))
+          i += 1
+        }
+        updated
+      }.persist(StorageLevel.MEMORY_AND_DISK)
+      val totalCost = costs.map(_.sum).sum()
+      previousCosts.unpersist()
+      broadcastCandidates.unpersist()
+
+      if (totalCost <= 0.0) {
+        // Every point coincides with a candidate already
+        done = true
+      } else {
+        val stepSeed = seed + 7919L * (step + 1)
+        newCandidates = data.zip(costs).mapPartitionsWithIndex { (partition, blocks) =>
+          val random = new Random(stepSeed * 31 + partition)
+          val sampled = ArrayBuffer[Double]()
+          val point = new Array[Double](dim)
+          blocks.foreach { case (block, blockCosts) =>
+            var i = 0
+            while (i < block.getSize) {
+              if (random.nextDouble() < oversampling * blockCosts(i) / totalCost) {
+                block.copyPoint(i, point, 0)
+                sampled ++= point
+              }
+              i += 1
+            }
+          }
+          Iterator.single(sampled.toArray)
+        }.collect().flatten
+        candidates ++= newCandidates
+        LOG.debug("Finished k-means|| step {} with {} candidates", step, candidates.length / dim)
+      }
+      step += 1
+    }
+    costs.unpersist()
+
+    val all = candidates.toArray
+    val count = all.length / dim
+    if (count <= k) {
+      // Too few candidates to choose from, top up with random points
+      val extra = SparkKMeansProgram.points(data).takeSample(withReplacement = false, k - count, seed + 1).flatten
+      return all ++ extra
+    }
+
+    // Weigh every candidate by the amount of points closest to it
+    val broadcastAll = sc.broadcast(all)
+    val weights = data.mapPartitions { blocks =>
+      val current = broadcastAll.value
+      val partitionWeights = new Array[Double](count)
+      val point = new Array[Double](dim)
+      blocks.foreach { block =>
+        var i = 0
+        while (i < block.getSize) {
+          block.copyPoint(i, point, 0)
+          partitionWeights(Distances.nearest(point, 0, current, dim)) += 1.0
+          i += 1
+        }
+      }
+      Iterator.single(partitionWeights)
+    }.treeReduce { (a, b) =>
+      var i = 0
+      while (i < a.length) {
+        a(i) += b(i)
+        i += 1
+      }
+      a
+    }
+    broadcastAll.unpersist()
+
+    localKMeans(all, weights, k, dim, new Random(seed))
+  }
+
+  /**
+   * Weighted KMeans++ seeding followed by Lloyd's algorithm over a small set of weighted points.
+   */
+  private[projectsix] def localKMeans(points: Array[Double], weights: Array[Double],
+                                      k: Int, dim: Int, random: Random): Array[Double] = {
+    val n = weights.length
+    val centers = new Array[Double](k * dim)
+    val costs = Array.fill(n)(Double.PositiveInfinity)
+
+    var chosen = pick(weights, weights.sum, random)
+    Array.copy(points, chosen * dim, centers, 0, dim)
+    for (c <- 1 until k) {
+      var total = 0.0
+      for (i <- 0 until n) {
+        costs(i) = math.min(costs(i), Distances.squared(points, i * dim, centers, (c - 1) * dim, dim))
+        total += weights(i) * costs(i)
+      }
+      chosen = if (total > 0.0) {
+        pick(Array.tabulate(n)(i => weights(i) * costs(i)), total, random)
+      } else {
+        random.nextInt(n)
+      }
+      Array.copy(points, chosen * dim, centers, c * dim, dim)
+    }
+
+    var iteration = 0
+    var moved = true
+    while (iteration < LocalIterations && moved) {
+      val sums = new Array[Double](k * dim)
+      val counts = new Array[Double](k)
+      for (i <- 0 until n) {
+        val center = Distances.nearest(points, i * dim, centers, dim)
+        for (d <- 0 until dim) {
+          sums(center * dim + d) += weights(i) * points(i * dim + d)
+        }
+        counts(center) += weights(i)
+      }
+      moved = false
+      for (c <- 0 until k if counts(c) > 0; d <- 0 until dim) {
+        val updated = sums(c * dim + d) / counts(c)
+        moved = moved || updated != centers(c * dim + d)
+        centers(c * dim + d) = updated
+      }
+      iteration += 1
+    }
+    centers
+  }
+
+  /**
+   * Picks an index with a probability proportional to its weight.
+   */
+  private def pick(weights: Array[Double], total: Double, random: Random): Int = {
+    val target = random.nextDouble() * total
+    var sum = 0.0
+    var i = 0
+    while (i < weights.length - 1 && sum + weights(i) <= target) {
+      sum += weights(i)
+      i += 1
+    }
+    i
+  }
+}
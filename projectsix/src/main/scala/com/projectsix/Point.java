@@ -20,7 +20,10 @@ import java.io.Serializable;
 
 /**
  * Represents a point in space.
+ *
+ * @deprecated points of any amount of dimensions are represented by {@link DensePoint}
  */
+@Deprecated
 public class Point implements Serializable {
 
   private final double x;
@@ -0,0 +1,523 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A block of points stored column by column: all first coordinates, then all second coordinates and so on.
+ *
+ * <p>The columns are kept at one of four precisions, both in memory and in the encoded form:</p>
+ * <ul>
+ *   <li>{@link #DOUBLE_PRECISION}: the coordinates as given.</li>
+ *   <li>{@link #FLOAT_PRECISION}: every coordinate rounded to a {@code float}, off by at most
+ *   {@code |x| * 2^-24}, and half the size.</li>
+ *   <li>{@link #Q16_PRECISION} and {@link #Q8_PRECISION}: every column scaled onto the {@code 2^16} or
+ *   {@code 2^8} evenly spaced values between its minimum and maximum within the block. A coordinate is off by
+ *   at most {@code (max - min) / (2 * (2^bits - 1))}, at a quarter or an eighth of the size.</li>
+ * </ul>
+ *
+ * <p>A center is the mean of its points, so as long as the points are assigned to the same centers, every
+ * coordinate of a center is off by no more than the largest error of that coordinate among its points. Points
+ * within that error of the boundary between two centers may be assigned differently though, which moves the
+ * centers further, by an amount that shrinks with the share of such points.</p>
+ *
+ * <p>The encoded form is a small header (format version, dimensions and point count as little-endian ints)
+ * followed by the columns as contiguous little-endian values. Quantized blocks store the minimum and the
+ * step of every column as doubles ahead of the columns. Version 1 holds doubles, 2 floats, 3 and 4 16-bit and
+ * 8-bit values.</p>
+ */
+public final class PointBlock implements Serializable {
+
+  /**
+   * Amount of points a writer collects into a block before starting a new one.
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * Coordinates are kept as doubles.
+   */
+  public static final String DOUBLE_PRECISION = "double";
+
+  /**
+   * Coordinates are kept as floats.
+   */
+  public static final String FLOAT_PRECISION = "float";
+
+  /**
+   * Coordinates are quantized to 16 bits per column.
+   */
+  public static final String Q16_PRECISION = "q16";
+
+  /**
+   * Coordinates are quantized to 8 bits per column.
+   */
+  public static final String Q8_PRECISION = "q8";
+
+  private static final byte DOUBLE_VERSION = 1;
+  private static final byte FLOAT_VERSION = 2;
+  private static final byte Q16_VERSION = 3;
+  private static final byte Q8_VERSION = 4;
+  private static final int HEADER_SIZE = 1 + 4 + 4;
+
+  private final int dimensions;
+  private final int size;
+  private final Columns columns;
+
+  /**
+   * Creates a block of {@code size} points from coordinates stored column by column, kept as doubles.
+   */
+  public PointBlock(int dimensions, int size, double[] columns) {
+    this(dimensions, size, new DoubleColumns(columns));
+    Preconditions.checkArgument(columns.length == dimensions * size, "Expected %s coordinates but got %s",
+                                dimensions * size, columns.length);
+  }
+
+  private PointBlock(int dimensions, int size, Columns columns) {
+    Preconditions.checkArgument(dimensions > 0, "Dimensions must be positive");
+    this.dimensions = dimensions;
+    this.size = size;
+    this.columns = columns;
+  }
+
+  public int getDimensions() {
+    return dimensions;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the precision the coordinates are kept at.
+   */
+  public String getPrecision() {
+    return columns.precision();
+  }
+
+  /**
+   * Returns coordinate {@code dimension} of point {@code index}.
+   */
+  public double get(int index, int dimension) {
+    return columns.get(dimension, dimension * size + index);
+  }
+
+  /**
+   * Copies the coordinates of point {@code index} into {@code out}, starting at {@code offset}.
+   */
+  public void copyPoint(int index, double[] out, int offset) {
+    for (int d = 0; d < dimensions; d++) {
+      out[offset + d] = columns.get(d, d * size + index);
+    }
+  }
+
+  /**
+   * Returns this block with its coordinates kept at the given precision. Converting a block that is already
+   * quantized or rounded adds the error of the new precision to the error it already has.
+   */
+  public PointBlock withPrecision(String precision) {
+    if (getPrecision().equals(precision)) {
+      return this;
+    }
+    double[] values = new double[dimensions * size];
+    for (int d = 0; d < dimensions; d++) {
+      for (int i = d * size; i < (d + 1) * size; i++) {
+        values[i] = columns.get(d, i);
+      }
+    }
+    return new PointBlock(dimensions, size, columns(precision, dimensions, size, values));
+  }
+
+  /**
+   * Encodes this block into its stored form.
+   */
+  public byte[] encode() {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + columns.encodedSize()).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(columns.version()).putInt(dimensions).putInt(size);
+    columns.encode(buffer);
+    return buffer.array();
+  }
+
+  /**
+   * Decodes a block written by {@link #encode()}, keeping the precision it was written at.
+   */
+  public static PointBlock decode(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    byte version = buffer.get();
+    int dimensions = buffer.getInt();
+    int size = buffer.getInt();
+    int length = dimensions * size;
+    switch (version) {
+      case DOUBLE_VERSION:
+        double[] doubles = new double[length];
+        buffer.asDoubleBuffer().get(doubles);
+        return new PointBlock(dimensions, size, doubles);
+      case FLOAT_VERSION:
+        float[] floats = new float[length];
+        buffer.asFloatBuffer().get(floats);
+        return new PointBlock(dimensions, size, new FloatColumns(floats));
+      case Q16_VERSION:
+      case Q8_VERSION:
+        double[] minimums = new double[dimensions];
+        double[] steps = new double[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+          minimums[d] = buffer.getDouble();
+          steps[d] = buffer.getDouble();
+        }
+        if (version == Q16_VERSION) {
+          short[] values = new short[length];
+          buffer.asShortBuffer().get(values);
+          return new PointBlock(dimensions, size, new Q16Columns(minimums, steps, values));
+        }
+        byte[] values = new byte[length];
+        buffer.get(values);
+        return new PointBlock(dimensions, size, new Q8Columns(minimums, steps, values));
+      default:
+        throw new IllegalArgumentException("Unsupported point block version " + version);
+    }
+  }
+
+  /**
+   * Checks that {@code precision} is one of the supported precisions, returning it.
+   */
+  public static String checkPrecision(String precision) {
+    Preconditions.checkArgument(DOUBLE_PRECISION.equals(precision) || FLOAT_PRECISION.equals(precision) ||
+                                  Q16_PRECISION.equals(precision) || Q8_PRECISION.equals(precision),
+                                "Unsupported point precision %s", precision);
+    return precision;
+  }
+
+  /**
+   * Keeps the column by column coordinates of {@code size} points at the given precision.
+   */
+  private static Columns columns(String precision, int dimensions, int size, double[] values) {
+    switch (checkPrecision(precision)) {
+      case FLOAT_PRECISION:
+        float[] floats = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+          floats[i] = (float) values[i];
+        }
+        return new FloatColumns(floats);
+      case Q16_PRECISION:
+      case Q8_PRECISION:
+        int levels = Q16_PRECISION.equals(precision) ? 0xFFFF : 0xFF;
+        double[] minimums = new double[dimensions];
+        double[] steps = new double[dimensions];
+        int[] quantized = new int[values.length];
+        for (int d = 0; d < dimensions; d++) {
+          double min = Double.POSITIVE_INFINITY;
+          double max = Double.NEGATIVE_INFINITY;
+          for (int i = d * size; i < (d + 1) * size; i++) {
+            Preconditions.checkArgument(!Double.isNaN(values[i]) && !Double.isInfinite(values[i]),
+                                        "Cannot quantize coordinate %s", values[i]);
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+          }
+          minimums[d] = size == 0 ? 0.0 : min;
+          steps[d] = size == 0 ? 0.0 : (max - min) / levels;
+          for (int i = d * size; i < (d + 1) * size; i++) {
+            quantized[i] = steps[d] == 0.0 ? 0 : (int) Math.min(levels, Math.round((values[i] - min) / steps[d]));
+          }
+        }
+        if (levels == 0xFFFF) {
+          short[] shorts = new short[values.length];
+          for (int i = 0; i < values.length; i++) {
+            shorts[i] = (short) quantized[i];
+          }
+          return new Q16Columns(minimums, steps, shorts);
+        }
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+          bytes[i] = (byte) quantized[i];
+        }
+        return new Q8Columns(minimums, steps, bytes);
+      default:
+        return new DoubleColumns(values);
+    }
+  }
+
+  /**
+   * The coordinates of a block at some precision, addressed by dimension and position in the columns.
+   */
+  private abstract static class Columns implements Serializable {
+
+    abstract String precision();
+
+    abstract byte version();
+
+    abstract double get(int dimension, int index);
+
+    abstract int encodedSize();
+
+    abstract void encode(ByteBuffer buffer);
+  }
+
+  private static final class DoubleColumns extends Columns {
+
+    private final double[] values;
+
+    DoubleColumns(double[] values) {
+      this.values = values;
+    }
+
+    @Override
+    String precision() {
+      return DOUBLE_PRECISION;
+    }
+
+    @Override
+    byte version() {
+      return DOUBLE_VERSION;
+    }
+
+    @Override
+    double get(int dimension, int index) {
+      return values[index];
+    }
+
+    @Override
+    int encodedSize() {
+      return values.length * 8;
+    }
+
+    @Override
+    void encode(ByteBuffer buffer) {
+      buffer.asDoubleBuffer().put(values);
+    }
+  }
+
+  private static final class FloatColumns extends Columns {
+
+    private final float[] values;
+
+    FloatColumns(float[] values) {
+      this.values = values;
+    }
+
+    @Override
+    String precision() {
+      return FLOAT_PRECISION;
+    }
+
+    @Override
+    byte version() {
+      return FLOAT_VERSION;
+    }
+
+    @Override
+    double get(int dimension, int index) {
+      return values[index];
+    }
+
+    @Override
+    int encodedSize() {
+      return values.length * 4;
+    }
+
+    @Override
+    void encode(ByteBuffer buffer) {
+      buffer.asFloatBuffer().put(values);
+    }
+  }
+
+  /**
+   * Columns quantized as {@code minimum + value * step}, keeping the minimum and step of every column.
+   */
+  private abstract static class QuantizedColumns extends Columns {
+
+    private final double[] minimums;
+    private final double[] steps;
+
+    QuantizedColumns(double[] minimums, double[] steps) {
+      this.minimums = minimums;
+      this.steps = steps;
+    }
+
+    abstract int value(int index);
+
+    abstract int length();
+
+    abstract int valueSize();
+
+    @Override
+    double get(int dimension, int index) {
+      return minimums[dimension] + value(index) * steps[dimension];
+    }
+
+    @Override
+    int encodedSize() {
+      return minimums.length * 16 + length() * valueSize();
+    }
+
+    @Override
+    void encode(ByteBuffer buffer) {
+      for (int d = 0; d < minimums.length; d++) {
+        buffer.putDouble(minimums[d]).putDouble(steps[d]);
+      }
+    }
+  }
+
+  private static final class Q16Columns extends QuantizedColumns {
+
+    private final short[] values;
+
+    Q16Columns(double[] minimums, double[] steps, short[] values) {
+      super(minimums, steps);
+      this.values = values;
+    }
+
+    @Override
+    String precision() {
+      return Q16_PRECISION;
+    }
+
+    @Override
+    byte version() {
+      return Q16_VERSION;
+    }
+
+    @Override
+    int value(int index) {
+      return values[index] & 0xFFFF;
+    }
+
+    @Override
+    int length() {
+      return values.length;
+    }
+
+    @Override
+    int valueSize() {
+      return 2;
+    }
+
+    @Override
+    void encode(ByteBuffer buffer) {
+      super.encode(buffer);
+      buffer.asShortBuffer().put(values);
+    }
+  }
+
+  private static final class Q8Columns extends QuantizedColumns {
+
+    private final byte[] values;
+
+    Q8Columns(double[] minimums, double[] steps, byte[] values) {
+      super(minimums, steps);
+      this.values = values;
+    }
+
+    @Override
+    String precision() {
+      return Q8_PRECISION;
+    }
+
+    @Override
+    byte version() {
+      return Q8_VERSION;
+    }
+
+    @Override
+    int value(int index) {
+      return values[index] & 0xFF;
+    }
+
+    @Override
+    int length() {
+      return values.length;
+    }
+
+    @Override
+    int valueSize() {
+      return 1;
+    }
+
+    @Override
+    void encode(ByteBuffer buffer) {
+      super.encode(buffer);
+      buffer.put(values);
+    }
+  }
+
+  /**
+   * Collects points one by one into a block.
+   */
+  public static final class Builder {
+
+    private final int dimensions;
+    private final int capacity;
+    private final double[] columns;
+    private int size;
+
+    public Builder(int dimensions, int capacity) {
+      this.dimensions = dimensions;
+      this.capacity = capacity;
+      this.columns = new double[dimensions * capacity];
+    }
+
+    /**
+     * Adds the point stored at {@code [offset, offset + dimensions)} of {@code point}.
+     */
+    public Builder add(double[] point, int offset) {
+      Preconditions.checkState(size < capacity, "Block is full");
+      for (int d = 0; d < dimensions; d++) {
+        columns[d * capacity + size] = point[offset + d];
+      }
+      size++;
+      return this;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public boolean isFull() {
+      return size == capacity;
+    }
+
+    /**
+     * Builds a block of the points added so far and empties this builder.
+     */
+    public PointBlock build() {
+      return build(DOUBLE_PRECISION);
+    }
+
+    /**
+     * Builds a block of the points added so far, kept at the given precision, and empties this builder.
+     */
+    public PointBlock build(String precision) {
+      double[] packed = new double[dimensions * size];
+      for (int d = 0; d < dimensions; d++) {
+        System.arraycopy(columns, d * capacity, packed, d * size, size);
+      }
+      PointBlock block = new PointBlock(dimensions, size, columns(precision, dimensions, size, packed));
+      size = 0;
+      return block;
+    }
+
+    /**
+     * Empties this builder without building a block.
+     */
+    public void clear() {
+      size = 0;
+    }
+  }
+}
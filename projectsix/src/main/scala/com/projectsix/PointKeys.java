@@ -0,0 +1,55 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import co.cask.cdap.api.common.Bytes;
+
+import java.util.UUID;
+
+/**
+ * Generates unique keys for stored points: the event timestamp, so points can be read by the time they were
+ * written, followed by a random prefix drawn once per generator and a counter.
+ */
+public final class PointKeys {
+
+  /**
+   * Length of every generated key.
+   */
+  public static final int KEY_LENGTH = 24;
+
+  private final long prefix;
+  private long counter;
+
+  public PointKeys() {
+    this(UUID.randomUUID().getMostSignificantBits());
+  }
+
+  PointKeys(long prefix) {
+    this.prefix = prefix;
+  }
+
+  /**
+   * Returns a new key for a point written at {@code timestamp}.
+   */
+  public byte[] next(long timestamp) {
+    byte[] key = new byte[KEY_LENGTH];
+    Bytes.putLong(key, 0, timestamp);
+    Bytes.putLong(key, 8, prefix);
+    Bytes.putLong(key, 16, counter++);
+    return key;
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import com.google.common.base.Charsets;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses space separated decimal coordinates straight from the bytes of an event body, without creating
+ * Strings along the way.
+ *
+ * <p>Plain decimals of up to 15 significant digits, such as {@code 519.2} or {@code -1.5e3}, are converted
+ * exactly with a single multiplication or division by a power of ten. Anything else falls back to
+ * {@link Double#parseDouble(String)}.</p>
+ */
+public final class PointParser {
+
+  private static final int MAX_FAST_DIGITS = 15;
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private PointParser() {
+  }
+
+  /**
+   * Parses the coordinates of a single point, filling all of {@code out}.
+   *
+   * @throws IllegalArgumentException if the body does not hold exactly {@code out.length} numbers
+   */
+  public static void parsePoint(ByteBuffer body, double[] out) {
+    parsePoint(body, body.position(), body.limit(), out);
+  }
+
+  /**
+   * Parses the coordinates of a single point spelled by {@code [from, to)} of {@code bytes}, filling all of
+   * {@code out}.
+   *
+   * @throws IllegalArgumentException if the bytes do not hold exactly {@code out.length} numbers
+   */
+  public static void parsePoint(ByteBuffer bytes, int from, int to, double[] out) {
+    int count = 0;
+    int position = skipSpaces(bytes, from, to);
+    while (position < to) {
+      if (count == out.length) {
+        throw invalidPoint(bytes, from, to, out.length);
+      }
+      int end = tokenEnd(bytes, position, to);
+      out[count++] = parseDouble(bytes, position, end);
+      position = skipSpaces(bytes, end, to);
+    }
+    if (count != out.length) {
+      throw invalidPoint(bytes, from, to, out.length);
+    }
+  }
+
+  /**
+   * Parses up to {@code max} space separated numbers from {@code [from, to)} of {@code bytes} into
+   * {@code out}, starting at {@code offset}.
+   *
+   * @return the amount of numbers parsed
+   */
+  public static int parse(ByteBuffer bytes, int from, int to, double[] out, int offset, int max) {
+    int count = 0;
+    int position = skipSpaces(bytes, from, to);
+    while (position < to && count < max) {
+      int end = tokenEnd(bytes, position, to);
+      out[offset + count] = parseDouble(bytes, position, end);
+      count++;
+      position = skipSpaces(bytes, end, to);
+    }
+    return count;
+  }
+
+  /**
+   * Parses the number spelled by {@code [from, to)} of {@code bytes}.
+   *
+   * @throws NumberFormatException if the bytes do not spell a number
+   */
+  public static double parseDouble(ByteBuffer bytes, int from, int to) {
+    int position = from;
+    boolean negative = false;
+    if (position < to && (bytes.get(position) == '-' || bytes.get(position) == '+')) {
+      negative = bytes.get(position) == '-';
+      position++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean seenDigit = false;
+    boolean seenPoint = false;
+    while (position < to) {
+      byte b = bytes.get(position);
+      if (b >= '0' && b <= '9') {
+        seenDigit = true;
+        // Leading zeros do not count towards the significant digits
+        if (mantissa != 0 || b != '0') {
+          if (digits == MAX_FAST_DIGITS) {
+            return slowParse(bytes, from, to);
+          }
+          mantissa = mantissa * 10 + (b - '0');
+          digits++;
+        }
+        if (seenPoint) {
+          exponent--;
+        }
+      } else if (b == '.' && !seenPoint) {
+        seenPoint = true;
+      } else {
+        break;
+      }
+      position++;
+    }
+    if (!seenDigit) {
+      return slowParse(bytes, from, to);
+    }
+
+    if (position < to) {
+      byte b = bytes.get(position);
+      if (b != 'e' && b != 'E') {
+        return slowParse(bytes, from, to);
+      }
+      position++;
+      boolean negativeExponent = false;
+      if (position < to && (bytes.get(position) == '-' || bytes.get(position) == '+')) {
+        negativeExponent = bytes.get(position) == '-';
+        position++;
+      }
+      int explicit = 0;
+      int start = position;
+      while (position < to && bytes.get(position) >= '0' && bytes.get(position) <= '9' && explicit < 1000) {
+        explicit = explicit * 10 + (bytes.get(position) - '0');
+        position++;
+      }
+      if (position == start || position != to) {
+        return slowParse(bytes, from, to);
+      }
+      exponent += negativeExponent ? -explicit : explicit;
+    }
+
+    double value;
+    if (mantissa == 0) {
+      value = 0.0;
+    } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+      value = mantissa * POWERS_OF_TEN[exponent];
+    } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+      value = mantissa / POWERS_OF_TEN[-exponent];
+    } else {
+      return slowParse(bytes, from, to);
+    }
+    return negative ? -value : value;
+  }
+
+  private static IllegalArgumentException invalidPoint(ByteBuffer bytes, int from, int to, int dimensions) {
+    return new IllegalArgumentException(
+      String.format("Expected %d coordinates in '%s'", dimensions, toString(bytes, from, to)));
+  }
+
+  private static double slowParse(ByteBuffer bytes, int from, int to) {
+    return Double.parseDouble(toString(bytes, from, to));
+  }
+
+  private static String toString(ByteBuffer bytes, int from, int to) {
+    byte[] copy = new byte[to - from];
+    for (int i = 0; i < copy.length; i++) {
+      copy[i] = bytes.get(from + i);
+    }
+    return new String(copy, Charsets.US_ASCII);
+  }
+
+  private static int skipSpaces(ByteBuffer bytes, int from, int to) {
+    int position = from;
+    while (position < to && isSpace(bytes.get(position))) {
+      position++;
+    }
+    return position;
+  }
+
+  private static int tokenEnd(ByteBuffer bytes, int from, int to) {
+    int position = from;
+    while (position < to && !isSpace(bytes.get(position))) {
+      position++;
+    }
+    return position;
+  }
+
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+  }
+}
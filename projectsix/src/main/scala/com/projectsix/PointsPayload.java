@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import co.cask.cdap.api.flow.flowlet.StreamEvent;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes the points carried by a stream event body. The encoding is selected by the {@value #ENCODING_HEADER}
+ * event header, which is set by sending the event with a {@code pointsStream.encoding} HTTP header:
+ *
+ * <ul>
+ *   <li>{@value #TEXT_ENCODING}, the default: one point per line, its coordinates separated by spaces.
+ *   Blank lines are skipped.</li>
+ *   <li>{@value #BINARY_ENCODING}: the coordinates of every point as consecutive big endian doubles, as
+ *   written by {@link java.io.DataOutputStream#writeDouble(double)}.</li>
+ * </ul>
+ */
+public final class PointsPayload {
+
+  /**
+   * Name of the event header selecting the body encoding.
+   */
+  public static final String ENCODING_HEADER = "encoding";
+
+  public static final String TEXT_ENCODING = "text";
+  public static final String BINARY_ENCODING = "binary";
+
+  /**
+   * Receives the decoded points. The coordinates array is reused for every point, it must not be retained.
+   */
+  public interface Sink {
+    void add(double[] coordinates);
+  }
+
+  private PointsPayload() {
+  }
+
+  /**
+   * Decodes every point of the event into {@code sink}, using {@code coordinates} as scratch space.
+   *
+   * @return the amount of points decoded
+   * @throws IllegalArgumentException if the body is not a valid encoding of points of
+   *                                  {@code coordinates.length} dimensions
+   */
+  public static int decode(StreamEvent event, double[] coordinates, Sink sink) {
+    return decode(event.getHeaders().get(ENCODING_HEADER), event.getBody(), coordinates, sink);
+  }
+
+  /**
+   * Decodes every point of a body in the given encoding, {@code null} meaning {@value #TEXT_ENCODING}.
+   *
+   * @return the amount of points decoded
+   * @throws IllegalArgumentException if the body is not a valid encoding of points of
+   *                                  {@code coordinates.length} dimensions
+   */
+  public static int decode(String encoding, ByteBuffer body, double[] coordinates, Sink sink) {
+    if (encoding == null || TEXT_ENCODING.equalsIgnoreCase(encoding)) {
+      return decodeText(body, coordinates, sink);
+    }
+    if (BINARY_ENCODING.equalsIgnoreCase(encoding)) {
+      return decodeBinary(body, coordinates, sink);
+    }
+    throw new IllegalArgumentException(String.format("Unknown points encoding '%s'", encoding));
+  }
+
+  static int decodeText(ByteBuffer body, double[] coordinates, Sink sink) {
+    int limit = body.limit();
+    int count = 0;
+    int lineStart = body.position();
+    while (lineStart < limit) {
+      int lineEnd = lineStart;
+      boolean blank = true;
+      while (lineEnd < limit && body.get(lineEnd) != '\n') {
+        byte b = body.get(lineEnd);
+        blank = blank && (b == ' ' || b == '\t' || b == '\r');
+        lineEnd++;
+      }
+      if (!blank) {
+        PointParser.parsePoint(body, lineStart, lineEnd, coordinates);
+        sink.add(coordinates);
+        count++;
+      }
+      lineStart = lineEnd + 1;
+    }
+    return count;
+  }
+
+  static int decodeBinary(ByteBuffer body, double[] coordinates, Sink sink) {
+    int pointBytes = coordinates.length * 8;
+    if (body.remaining() % pointBytes != 0) {
+      throw new IllegalArgumentException(
+        String.format("Binary points body of %d bytes is not a multiple of %d", body.remaining(), pointBytes));
+    }
+    // Absolute reads on a duplicate leave the position and byte order of the event body alone
+    ByteBuffer doubles = body.duplicate().order(ByteOrder.BIG_ENDIAN);
+    int count = body.remaining() / pointBytes;
+    int position = body.position();
+    for (int i = 0; i < count; i++) {
+      for (int d = 0; d < coordinates.length; d++) {
+        coordinates[d] = doubles.getDouble(position);
+        position += 8;
+      }
+      sink.add(coordinates);
+    }
+    return count;
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix
+
+import java.util.Random
+
+import org.apache.spark.TaskContext
+import org.apache.spark.broadcast.Broadcast
+import org.apache.spark.rdd.RDD
+import org.apache.spark.storage.StorageLevel
+
+/**
+ * Assignment step pruned with the triangle inequality, after Hamerly ("Making k-means even faster", SDM 2010).
+ *
+ * Every point keeps its assigned center, an upper bound on the distance to it and a lower bound on the
+ * distance to every other center. When the centers move the bounds are loosened by how far they moved, and
+ * the distances of a point are only computed again once its bounds no longer prove the assigned center
+ * to be the closest one. Bounds only skip a point when the assigned center is closer than any other by a
+ * safe margin, so the assignments are exactly those of [[Distances.nearest]].
+ */
+object PrunedAssignment {
+
+  /** Relative slack keeping the bounds conservative despite rounding errors. */
+  private final val Slack = 1e-9
+
+  /** Amount of iterations after which the bounds are checkpointed. */
+  final val CheckpointInterval = 10
+
+  /**
+   * Assignments and distance bounds of the points of one block.
+   */
+  class BlockBounds(val assignment: Array[Int], val upper: Array[Double], val lower: Array[Double])
+    extends Serializable
+
+  /**
+   * The centers of an iteration together with what the bounds need to know about them: half the distance
+   * of every center to its closest other center, and how far every center moved since the bounds were
+   * last updated.
+   */
+  class Geometry(val centers: Array[Double], val halfSeparation: Array[Double], val movement: Array[Double],
+                 val maxMovement: Double, val maxMovementCenter: Int, val secondMovement: Double)
+    extends Serializable
+
+  /**
+   * Derives the geometry of `centers`, compared to the `previous` centers the bounds were computed for.
+   */
+  def geometry(centers: Array[Double], previous: Option[Array[Double]], dim: Int): Geometry = {
+    val k = centers.length / dim
+    val halfSeparation = Array.fill(k)(Double.PositiveInfinity)
+    var i = 0
+    while (i < k) {
+      var j = i + 1
+      while (j < k) {
+        val half = 0.5 * math.sqrt(Distances.squared(centers, i * dim, centers, j * dim, dim))
+        halfSeparation(i) = math.min(halfSeparation(i), half)
+        halfSeparation(j) = math.min(halfSeparation(j), half)
+        j += 1
+      }
+      i += 1
+    }
+
+    val movement = new Array[Double](k)
+    var maxMovement = 0.0
+    var maxMovementCenter = -1
+    var secondMovement = 0.0
+    previous.foreach { before =>
+      for (c <- 0 until k) {
+        movement(c) = math.sqrt(Distances.squared(centers, c * dim, before, c * dim, dim))
+        if (movement(c) > maxMovement) {
+          secondMovement = maxMovement
+          maxMovement = movement(c)
+          maxMovementCenter = c
+        } else if (movement(c) > secondMovement) {
+          secondMovement = movement(c)
+        }
+      }
+    }
+    new Geometry(centers, halfSeparation, movement, maxMovement, maxMovementCenter, secondMovement)
+  }
+
+  /**
+   * Assigns the points to the centers of `geometry`, starting from the bounds of the previous iteration if
+   * there are any. Returns one element per partition, holding the updated bounds of its blocks and the
+   * stats of its points, including how many of them moved to a different center. Points are sampled with
+   * the same random sequence as the brute force assignment.
+   */
+  def assign(data: RDD[PointBlock], previous: Option[RDD[(Array[BlockBounds], CenterStats)]],
+             geometry: Broadcast[Geometry], k: Int, dim: Int,
+             fraction: Double, iterationSeed: Long): RDD[(Array[BlockBounds], CenterStats)] = {
+    val bounds: RDD[BlockBounds] = previous match {
+      case Some(rdd) => rdd.flatMap(_._1.iterator)
+      case None => data.map(block => new BlockBounds(new Array[Int](block.getSize),
+                                                     Array.fill(block.getSize)(Double.PositiveInfinity),
+                                                     new Array[Double](block.getSize)))
+    }
+    val initial = previous.isEmpty
+    data.zipPartitions(bounds) { (blocks, blockBounds) =>
+      val current = geometry.value
+      val stats = new CenterStats(k, dim)
+      val point = new Array[Double](dim)
+      val random = new Random(iterationSeed * 31 + TaskContext.get.partitionId)
+      val updated = blocks.zip(blockBounds).map { case (block, before) =>
+        val after = new BlockBounds(before.assignment.clone(), before.upper.clone(), before.lower.clone())
+        var i = 0
+        while (i < block.getSize) {
+          loosen(after, i, current)
+          if (fraction >= 1.0 || random.nextDouble() < fraction) {
+            block.copyPoint(i, point, 0)
+            val assigned = after.assignment(i)
+            tighten(after, i, point, current, dim)
+            if (!initial && after.assignment(i) != assigned) {
+              stats.reassigned += 1
+            }
+            stats.add(after.assignment(i), point, 0)
+            stats.cost += Distances.squared(point, 0, current.centers, after.assignment(i) * dim, dim)
+          }
+          i += 1
+        }
+        after
+      }.toArray
+      Iterator.single((updated, stats))
+    }.persist(StorageLevel.MEMORY_AND_DISK)
+  }
+
+  /**
+   * Checkpoints the bounds returned by [[assign]] before they are first computed. Every iteration derives
+   * its bounds from those of the previous one, so without a checkpoint their lineage grows with every
+   * iteration. The bounds are written to the checkpoint directory if the context has one, and otherwise
+   * kept with the executors.
+   */
+  def checkpoint(bounds: RDD[(Array[BlockBounds], CenterStats)]) {
+    if (bounds.sparkContext.getCheckpointDir.isDefined) {
+      bounds.checkpoint()
+    } else {
+      bounds.localCheckpoint()
+    }
+  }
+
+  /**
+   * Loosens the bounds of point `i` by how far the centers moved.
+   */
+  private def loosen(bounds: BlockBounds, i: Int, geometry: Geometry) {
+    val center = bounds.assignment(i)
+    bounds.upper(i) += geometry.movement(center)
+    val otherMovement = if (center == geometry.maxMovementCenter) geometry.secondMovement else geometry.maxMovement
+    bounds.lower(i) = math.max(0.0, bounds.lower(i) - otherMovement)
+  }
+
+  /**
+   * Makes sure point `i` is assigned to its closest center, computing distances only if the bounds
+   * cannot rule out the other centers.
+   */
+  private def tighten(bounds: BlockBounds, i: Int, point: Array[Double], geometry: Geometry, dim: Int) {
+    val center = bounds.assignment(i)
+    val limit = math.max(bounds.lower(i), geometry.halfSeparation(center)) * (1.0 - Slack)
+    if (bounds.upper(i) * (1.0 + Slack) < limit) {
+      return
+    }
+    bounds.upper(i) = math.sqrt(Distances.squared(point, 0, geometry.centers, center * dim, dim))
+    if (bounds.upper(i) * (1.0 + Slack) < limit) {
+      return
+    }
+
+    // Same scan as Distances.nearest, also keeping the second closest distance
+    val centers = geometry.centers
+    val k = centers.length / dim
+    var best = 0
+    var closest = Double.PositiveInfinity
+    var second = Double.PositiveInfinity
+    var c = 0
+    while (c < k) {
+      val distance = Distances.squared(point, 0, centers, c * dim, dim)
+      if (distance < closest) {
+        second = closest
+        closest = distance
+        best = c
+      } else if (distance < second) {
+        second = distance
+      }
+      c += 1
+    }
+    bounds.assignment(i) = best
+    bounds.upper(i) = math.sqrt(closest)
+    bounds.lower(i) = math.sqrt(second)
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import java.io.Serializable;
+
+/**
+ * Summary of one run of the Spark program, stored in the {@value #DATASET} dataset under the logical start
+ * time of the run.
+ */
+public class RunSummary implements Serializable {
+
+  /**
+   * Dataset holding a summary of every run.
+   */
+  public static final String DATASET = "kmeansRuns";
+
+  /**
+   * The centers moved less than the convergence distance.
+   */
+  public static final String CONVERGED = "converged";
+
+  /**
+   * The iteration lowered the cost by less than the minimum improvement.
+   */
+  public static final String MIN_IMPROVEMENT = "minImprovement";
+
+  /**
+   * The run reached its maximum amount of iterations.
+   */
+  public static final String MAX_ITERATIONS = "maxIterations";
+
+  /**
+   * The run used up its time budget.
+   */
+  public static final String TIME_BUDGET = "timeBudget";
+
+  private final long startTime;
+  private final long durationMillis;
+  private final String mode;
+  private final String assign;
+  private final int dimensions;
+  private final int iterations;
+  private final double finalDelta;
+  private final double finalCost;
+  private final String stopReason;
+  private final long[] clusterSizes;
+  private final long shuffleBytes;
+
+  public RunSummary(long startTime, long durationMillis, String mode, String assign, int dimensions,
+                    int iterations, double finalDelta, double finalCost, String stopReason,
+                    long[] clusterSizes, long shuffleBytes) {
+    this.startTime = startTime;
+    this.durationMillis = durationMillis;
+    this.mode = mode;
+    this.assign = assign;
+    this.dimensions = dimensions;
+    this.iterations = iterations;
+    this.finalDelta = finalDelta;
+    this.finalCost = finalCost;
+    this.stopReason = stopReason;
+    this.clusterSizes = clusterSizes;
+    this.shuffleBytes = shuffleBytes;
+  }
+
+  public long getStartTime() {
+    return startTime;
+  }
+
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public String getMode() {
+    return mode;
+  }
+
+  public String getAssign() {
+    return assign;
+  }
+
+  public int getDimensions() {
+    return dimensions;
+  }
+
+  public int getIterations() {
+    return iterations;
+  }
+
+  /**
+   * Returns the summed squared movement of the centers in the last iteration.
+   */
+  public double getFinalDelta() {
+    return finalDelta;
+  }
+
+  /**
+   * Returns the mean squared distance of the points to their centers in the last iteration.
+   */
+  public double getFinalCost() {
+    return finalCost;
+  }
+
+  /**
+   * Returns the rule that ended the run: {@link #CONVERGED}, {@link #MIN_IMPROVEMENT}, {@link #MAX_ITERATIONS}
+   * or {@link #TIME_BUDGET}.
+   */
+  public String getStopReason() {
+    return stopReason;
+  }
+
+  /**
+   * Returns the amount of points assigned to every center in the last iteration.
+   */
+  public long[] getClusterSizes() {
+    return clusterSizes;
+  }
+
+  /**
+   * Returns the amount of bytes shuffled by the run.
+   */
+  public long getShuffleBytes() {
+    return shuffleBytes;
+  }
+}
@@ -16,43 +16,119 @@
 
 package com.projectsix;
 
+import co.cask.cdap.api.Config;
+import co.cask.cdap.api.TxRunnable;
+import co.cask.cdap.api.annotation.Batch;
 import co.cask.cdap.api.annotation.ProcessInput;
 import co.cask.cdap.api.annotation.UseDataSet;
 import co.cask.cdap.api.app.AbstractApplication;
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.DatasetContext;
 import co.cask.cdap.api.data.schema.UnsupportedTypeException;
 import co.cask.cdap.api.data.stream.Stream;
+import co.cask.cdap.api.dataset.Dataset;
 import co.cask.cdap.api.dataset.DatasetProperties;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
 import co.cask.cdap.api.dataset.lib.ObjectStore;
 import co.cask.cdap.api.dataset.lib.ObjectStores;
 import co.cask.cdap.api.flow.AbstractFlow;
 import co.cask.cdap.api.flow.flowlet.AbstractFlowlet;
+import co.cask.cdap.api.flow.flowlet.FlowletContext;
+import co.cask.cdap.api.flow.flowlet.FlowletSpecification;
+import co.cask.cdap.api.flow.flowlet.InputContext;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.api.metrics.Metrics;
 import co.cask.cdap.api.service.AbstractService;
 import co.cask.cdap.api.service.Service;
 import co.cask.cdap.api.service.http.AbstractHttpServiceHandler;
 import co.cask.cdap.api.service.http.HttpServiceRequest;
 import co.cask.cdap.api.service.http.HttpServiceResponder;
 import co.cask.cdap.api.spark.AbstractSpark;
+import co.cask.cdap.api.worker.AbstractWorker;
+import co.cask.cdap.api.worker.WorkerContext;
 import com.google.common.base.Charsets;
-import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.HttpURLConnection;
-import java.nio.ByteBuffer;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 
 /**
  * Application that demonstrate KMeans Clustering example.
  */
-public class SparkKMeansApp extends AbstractApplication {
+public class SparkKMeansApp extends AbstractApplication<SparkKMeansApp.KMeansConfig> {
+
+  /**
+   * Points are stored one by one as serialized {@link DensePoint} objects in the {@code points} dataset.
+   */
+  public static final String OBJECT_FORMAT = "object";
+
+  /**
+   * Points are stored as {@link PointBlock}s in the {@code pointBlocks} dataset.
+   */
+  public static final String COLUMNAR_FORMAT = "columnar";
+
+  /**
+   * Name of the Spark program property holding the points storage format.
+   */
+  public static final String POINTS_FORMAT_PROPERTY = "points.format";
+
+  /**
+   * Name of the program property holding the amount of coordinates of every point.
+   */
+  public static final String DIMENSIONS_PROPERTY = "points.dimensions";
+
+  /**
+   * Amount of coordinates of every point unless configured otherwise.
+   */
+  public static final int DEFAULT_DIMENSIONS = 3;
+
+  /**
+   * Name of the program property holding the precision points are kept at, see {@link PointBlock}.
+   */
+  public static final String PRECISION_PROPERTY = "points.precision";
+
+  /**
+   * Name of the points reader property holding the lag in seconds a batch of events should stay within.
+   */
+  public static final String MAX_LATENCY_PROPERTY = "ingest.maxLatencySeconds";
+
+  /**
+   * Name of the points reader property holding the amount of points a batch should stay within.
+   */
+  public static final String MAX_BATCH_PROPERTY = "ingest.maxBatchPoints";
+
+  /**
+   * Lag in seconds a batch of events should stay within unless configured otherwise.
+   */
+  public static final int DEFAULT_MAX_LATENCY_SECONDS = 300;
+
+  /**
+   * Name of the {@link PointsJanitor} property holding how many hours points are kept.
+   */
+  public static final String RETENTION_PROPERTY = "points.retentionHours";
+
+  /**
+   * Maximum amount of stream events a points reader consumes in one transaction.
+   */
+  static final int BATCH_SIZE = 1024;
 
   @Override
   public void configure() {
+    KMeansConfig config = getConfig();
     setName("SparkKMeans");
     setDescription("Spark KMeans app");
 
@@ -60,20 +136,31 @@ public class SparkKMeansApp extends AbstractApplication {
     addStream(new Stream("pointsStream"));
 
     // Process points data in real-time using a Flow
-    addFlow(new PointsFlow());
+    addFlow(new PointsFlow(config));
 
     // Run a Spark program on the acquired data
-    addSpark(new SparkKMeansSpecification());
+    addSpark(new SparkKMeansSpecification(config));
 
     // Retrieve the processed data using a Service
     addService(new CentersService());
 
+    // Expire old points when a retention is configured
+    if (config.getRetentionHours() > 0) {
+      addWorker(new PointsJanitor(config));
+    }
+
     // Store input and processed data in ObjectStore Datasets
     try {
-      ObjectStores.createObjectStore(getConfigurer(), "points", Point.class,
+      ObjectStores.createObjectStore(getConfigurer(), "points", DensePoint.class,
                                      DatasetProperties.builder().setDescription("Store points data").build());
       ObjectStores.createObjectStore(getConfigurer(), "centers", String.class,
                                      DatasetProperties.builder().setDescription("Store centers data").build());
+      ObjectStores.createObjectStore(getConfigurer(), RunSummary.DATASET, RunSummary.class,
+                                     DatasetProperties.builder().setDescription("Store KMeans run summaries").build());
+      createDataset("pointBlocks", KeyValueTable.class,
+                    DatasetProperties.builder().setDescription("Store points data in columnar blocks").build());
+      createDataset(KMeansState.DATASET, KeyValueTable.class,
+                    DatasetProperties.builder().setDescription("Store state of the last KMeans run").build());
     } catch (UnsupportedTypeException e) {
       // This exception is thrown by ObjectStore if its parameter type cannot be
       // (de)serialized (for example, if it is an interface and not a class, then there is
@@ -83,47 +170,489 @@ public class SparkKMeansApp extends AbstractApplication {
     }
   }
 
+  /**
+   * Configuration of the application, deserialized from the application config or put together with a
+   * {@link Builder}. Every setting left out takes its default. The programs of the application take the whole
+   * configuration and pick the settings they need.
+   */
+  public static class KMeansConfig extends Config {
+
+    private final String pointsFormat;
+    private final Integer centersUpdateSeconds;
+    private final Integer dimensions;
+    private final String pointsPrecision;
+    private final Integer maxLatencySeconds;
+    private final Integer maxBatchPoints;
+    private final Integer retentionHours;
+
+    public KMeansConfig() {
+      this(new Builder());
+    }
+
+    private KMeansConfig(Builder builder) {
+      this.pointsFormat = builder.pointsFormat;
+      this.centersUpdateSeconds = builder.centersUpdateSeconds;
+      this.dimensions = builder.dimensions;
+      this.pointsPrecision = builder.pointsPrecision;
+      this.maxLatencySeconds = builder.maxLatencySeconds;
+      this.maxBatchPoints = builder.maxBatchPoints;
+      this.retentionHours = builder.retentionHours;
+    }
+
+    /**
+     * Returns a builder of a configuration holding only defaults.
+     */
+    public static Builder builder() {
+      return new Builder();
+    }
+
+    /**
+     * Returns how ingested points are stored, either {@link #OBJECT_FORMAT} or {@link #COLUMNAR_FORMAT}.
+     */
+    public String getPointsFormat() {
+      return pointsFormat == null ? OBJECT_FORMAT : pointsFormat;
+    }
+
+    /**
+     * Returns how often the {@link CentersUpdater} persists the centers it moves with the ingested points,
+     * {@code 0} if the Flow should not update centers at all.
+     */
+    public int getCentersUpdateSeconds() {
+      return centersUpdateSeconds == null ? 0 : centersUpdateSeconds;
+    }
+
+    /**
+     * Returns the amount of coordinates of every point.
+     */
+    public int getDimensions() {
+      return dimensions == null ? DEFAULT_DIMENSIONS : dimensions;
+    }
+
+    /**
+     * Returns the precision points are kept at in columnar blocks and by the Spark program, one of the
+     * precisions of {@link PointBlock}.
+     */
+    public String getPointsPrecision() {
+      return pointsPrecision == null ? PointBlock.DOUBLE_PRECISION : PointBlock.checkPrecision(pointsPrecision);
+    }
+
+    /**
+     * Returns the lag in seconds behind the producers of the stream the points readers should stay within,
+     * beyond which the {@link CentersService} reports them as lagging.
+     */
+    public int getMaxLatencySeconds() {
+      return maxLatencySeconds == null ? DEFAULT_MAX_LATENCY_SECONDS : maxLatencySeconds;
+    }
+
+    /**
+     * Returns the amount of points a batch of the points readers should stay within, {@code 0} for no limit.
+     * The {@link CentersService} reports a reader whose last batch was larger as lagging.
+     */
+    public int getMaxBatchPoints() {
+      return maxBatchPoints == null ? 0 : maxBatchPoints;
+    }
+
+    /**
+     * Returns how many hours points are kept before the {@link PointsJanitor} deletes them, {@code 0} to keep
+     * them forever.
+     */
+    public int getRetentionHours() {
+      return retentionHours == null ? 0 : retentionHours;
+    }
+
+    /**
+     * Builder of a {@link KMeansConfig}, see its getters for what every setting means.
+     */
+    public static final class Builder {
+
+      private String pointsFormat;
+      private Integer centersUpdateSeconds;
+      private Integer dimensions;
+      private String pointsPrecision;
+      private Integer maxLatencySeconds;
+      private Integer maxBatchPoints;
+      private Integer retentionHours;
+
+      private Builder() {
+      }
+
+      public Builder setPointsFormat(String pointsFormat) {
+        this.pointsFormat = pointsFormat;
+        return this;
+      }
+
+      public Builder setCentersUpdateSeconds(int centersUpdateSeconds) {
+        this.centersUpdateSeconds = centersUpdateSeconds;
+        return this;
+      }
+
+      public Builder setDimensions(int dimensions) {
+        this.dimensions = dimensions;
+        return this;
+      }
+
+      public Builder setPointsPrecision(String pointsPrecision) {
+        this.pointsPrecision = pointsPrecision;
+        return this;
+      }
+
+      public Builder setMaxLatencySeconds(int maxLatencySeconds) {
+        this.maxLatencySeconds = maxLatencySeconds;
+        return this;
+      }
+
+      public Builder setMaxBatchPoints(int maxBatchPoints) {
+        this.maxBatchPoints = maxBatchPoints;
+        return this;
+      }
+
+      public Builder setRetentionHours(int retentionHours) {
+        this.retentionHours = retentionHours;
+        return this;
+      }
+
+      public KMeansConfig build() {
+        return new KMeansConfig(this);
+      }
+    }
+  }
+
   /**
    * A Spark Program that uses KMeans algorithm.
    */
   public static final class SparkKMeansSpecification extends AbstractSpark {
 
+    private final String pointsFormat;
+    private final int dimensions;
+    private final String pointsPrecision;
+
+    public SparkKMeansSpecification() {
+      this(new KMeansConfig());
+    }
+
+    public SparkKMeansSpecification(KMeansConfig config) {
+      this.pointsFormat = config.getPointsFormat();
+      this.dimensions = config.getDimensions();
+      this.pointsPrecision = config.getPointsPrecision();
+    }
+
     @Override
     public void configure() {
       setName("SparkKMeansProgram");
       setDescription("Spark KMeans Program");
       setMainClass(SparkKMeansProgram.class);
+      setProperties(ImmutableMap.of(POINTS_FORMAT_PROPERTY, pointsFormat,
+                                    DIMENSIONS_PROPERTY, Integer.toString(dimensions),
+                                    PRECISION_PROPERTY, pointsPrecision));
     }
   }
 
   /**
-   * This Flowlet reads events from a Stream and saves them to a dataset.
+   * This Flowlet reads events from a Stream and saves them to a dataset, see {@link PointsPayload} for the
+   * accepted event bodies. Events are consumed in batches, each batch being written to the dataset in a
+   * single transaction.
    */
   public static final class PointsReader extends AbstractFlowlet {
 
     private static final Logger LOG = LoggerFactory.getLogger(PointsReader.class);
 
     @UseDataSet("points")
-    private ObjectStore<Point> pointsStore;
+    private ObjectStore<DensePoint> pointsStore;
+
+    @UseDataSet(KMeansState.DATASET)
+    private KeyValueTable state;
+
+    private Metrics metrics;
+
+    private final int dimensions;
+    private final int maxLatencySeconds;
+    private final int maxBatchPoints;
+
+    private PointKeys keys;
+    private IngestLag lag;
+    private double[] coordinates;
+    private PointsPayload.Sink sink;
+    private long eventTimestamp;
+
+    public PointsReader() {
+      this(new KMeansConfig());
+    }
+
+    public PointsReader(KMeansConfig config) {
+      this.dimensions = config.getDimensions();
+      this.maxLatencySeconds = config.getMaxLatencySeconds();
+      this.maxBatchPoints = config.getMaxBatchPoints();
+    }
+
+    @Override
+    protected void configure() {
+      setProperties(ImmutableMap.of(DIMENSIONS_PROPERTY, Integer.toString(dimensions),
+                                    MAX_LATENCY_PROPERTY, Integer.toString(maxLatencySeconds),
+                                    MAX_BATCH_PROPERTY, Integer.toString(maxBatchPoints)));
+    }
+
+    @Override
+    public void initialize(FlowletContext context) throws Exception {
+      super.initialize(context);
+      keys = new PointKeys();
+      lag = ingestLag(context);
+      coordinates = new double[dimensions(context)];
+      sink = new PointsPayload.Sink() {
+        @Override
+        public void add(double[] point) {
+          pointsStore.write(keys.next(eventTimestamp), new DensePoint(point.clone()));
+        }
+      };
+    }
+
+    @Batch(BATCH_SIZE)
+    @ProcessInput
+    public void process(Iterator<StreamEvent> events) {
+      lag.startBatch();
+      while (events.hasNext()) {
+        StreamEvent event = events.next();
+        eventTimestamp = event.getTimestamp();
+        lag.event(eventTimestamp);
+        int count = PointsPayload.decode(event, coordinates, sink);
+        lag.points(count);
+        LOG.trace("Read {} points from event of {} bytes", count, event.getBody().remaining());
+      }
+      lag.endBatch(metrics, state);
+    }
+  }
+
+  /**
+   * This Flowlet reads events from a Stream and saves them to a dataset in columnar blocks, one or more
+   * blocks for every batch of events. It accepts the same event bodies as {@link PointsReader}.
+   */
+  public static final class ColumnarPointsReader extends AbstractFlowlet {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnarPointsReader.class);
+
+    @UseDataSet("pointBlocks")
+    private KeyValueTable blocksStore;
+
+    @UseDataSet(KMeansState.DATASET)
+    private KeyValueTable state;
+
+    private Metrics metrics;
+
+    private final int dimensions;
+    private final String precision;
+    private final int maxLatencySeconds;
+    private final int maxBatchPoints;
+
+    private PointKeys keys;
+    private IngestLag lag;
+    private PointBlock.Builder builder;
+    private String blockPrecision;
+    private double[] coordinates;
+    private PointsPayload.Sink sink;
+    private long eventTimestamp;
+    private long blockTimestamp;
+
+    public ColumnarPointsReader() {
+      this(new KMeansConfig());
+    }
+
+    public ColumnarPointsReader(KMeansConfig config) {
+      this.dimensions = config.getDimensions();
+      this.precision = config.getPointsPrecision();
+      this.maxLatencySeconds = config.getMaxLatencySeconds();
+      this.maxBatchPoints = config.getMaxBatchPoints();
+    }
+
+    @Override
+    protected void configure() {
+      setProperties(ImmutableMap.of(DIMENSIONS_PROPERTY, Integer.toString(dimensions),
+                                    PRECISION_PROPERTY, precision,
+                                    MAX_LATENCY_PROPERTY, Integer.toString(maxLatencySeconds),
+                                    MAX_BATCH_PROPERTY, Integer.toString(maxBatchPoints)));
+    }
 
+    @Override
+    public void initialize(FlowletContext context) throws Exception {
+      super.initialize(context);
+      keys = new PointKeys();
+      lag = ingestLag(context);
+      blockPrecision = PointBlock.checkPrecision(context.getSpecification().getProperty(PRECISION_PROPERTY));
+      coordinates = new double[dimensions(context)];
+      builder = new PointBlock.Builder(coordinates.length, PointBlock.DEFAULT_CAPACITY);
+      sink = new PointsPayload.Sink() {
+        @Override
+        public void add(double[] point) {
+          if (builder.size() == 0) {
+            blockTimestamp = eventTimestamp;
+          }
+          builder.add(point, 0);
+          if (builder.isFull()) {
+            writeBlock();
+          }
+        }
+      };
+    }
+
+    @Batch(BATCH_SIZE)
+    @ProcessInput
+    public void process(Iterator<StreamEvent> events) {
+      // A failed batch is retried from the start, drop whatever it had collected
+      builder.clear();
+      lag.startBatch();
+      while (events.hasNext()) {
+        StreamEvent event = events.next();
+        eventTimestamp = event.getTimestamp();
+        lag.event(eventTimestamp);
+        lag.points(PointsPayload.decode(event, coordinates, sink));
+      }
+      if (builder.size() > 0) {
+        writeBlock();
+      }
+      lag.endBatch(metrics, state);
+    }
+
+    private void writeBlock() {
+      LOG.trace("Writing block of {} points", builder.size());
+      blocksStore.write(keys.next(blockTimestamp), builder.build(blockPrecision).encode());
+    }
+  }
+
+  /**
+   * This Flowlet moves the stored centers towards the ingested points with sequential KMeans updates: every
+   * point pulls its closest center by {@code 1 / n} of their difference, {@code n} being the amount of points
+   * the center represents. The centers are persisted on an interval together with these amounts, so the
+   * {@link CentersService} follows the data between runs of the Spark program. Whenever the Spark program
+   * writes a new generation of centers, the updater drops its own changes and continues from those.
+   */
+  public static final class CentersUpdater extends AbstractFlowlet {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CentersUpdater.class);
+
+    private static final String INTERVAL_PROPERTY = "interval.seconds";
+
+    @UseDataSet("centers")
+    private ObjectStore<String> store;
+
+    @UseDataSet(KMeansState.DATASET)
+    private KeyValueTable state;
+
+    private final int intervalSeconds;
+    private final int pointDimensions;
+
+    private long intervalMillis;
+    private double[] coordinates;
+    private PointsPayload.Sink sink;
+
+    // State as of the last successful batch, the current batch working on copies
+    private double[] committedCenters;
+    private long[] committedCounts;
+    private long committedGeneration;
+    private boolean committedDirty;
+    private double[] centers;
+    private long[] counts;
+    private long generation;
+    private boolean dirty;
+    private int dimensions;
+    private long persistedAt;
+
+    public CentersUpdater(KMeansConfig config) {
+      this.intervalSeconds = config.getCentersUpdateSeconds();
+      this.pointDimensions = config.getDimensions();
+    }
+
+    @Override
+    protected void configure() {
+      setProperties(ImmutableMap.of(INTERVAL_PROPERTY, Integer.toString(intervalSeconds),
+                                    DIMENSIONS_PROPERTY, Integer.toString(pointDimensions)));
+    }
+
+    @Override
+    public void initialize(FlowletContext context) throws Exception {
+      super.initialize(context);
+      intervalMillis = TimeUnit.SECONDS.toMillis(
+        Integer.parseInt(context.getSpecification().getProperty(INTERVAL_PROPERTY)));
+      coordinates = new double[dimensions(context)];
+      sink = new PointsPayload.Sink() {
+        @Override
+        public void add(double[] point) {
+          int center = Distances.nearest(point, 0, centers, dimensions);
+          long count = ++counts[center];
+          int base = center * dimensions;
+          for (int d = 0; d < dimensions; d++) {
+            centers[base + d] += (point[d] - centers[base + d]) / count;
+          }
+        }
+      };
+      committedCenters = new double[0];
+      committedCounts = new long[0];
+      committedGeneration = -1L;
+    }
+
+    @Batch(BATCH_SIZE)
     @ProcessInput
-    public void process(StreamEvent event) {
-      String body = Bytes.toString(event.getBody());
-      LOG.trace("Points info: {}", body);
-      pointsStore.write(getIdAsByte(UUID.randomUUID()), parseEvent(event));
+    public void process(Iterator<StreamEvent> events) {
+      centers = committedCenters.clone();
+      counts = committedCounts.clone();
+      generation = committedGeneration;
+      dirty = committedDirty;
+      long storedGeneration = CentersSnapshot.readGeneration(state);
+      if (storedGeneration != generation) {
+        load(storedGeneration);
+      }
+      if (counts.length == 0 || dimensions != coordinates.length) {
+        // No centers to move yet
+        return;
+      }
+
+      while (events.hasNext()) {
+        dirty |= PointsPayload.decode(events.next(), coordinates, sink) > 0;
+      }
+      long now = System.currentTimeMillis();
+      if (dirty && now - persistedAt >= intervalMillis) {
+        persist();
+        persistedAt = now;
+      }
+    }
+
+    @Override
+    public void onSuccess(Object input, InputContext inputContext) {
+      // A failed batch is retried from the committed state, so its points do not move the centers twice
+      committedCenters = centers;
+      committedCounts = counts;
+      committedGeneration = generation;
+      committedDirty = dirty;
+      super.onSuccess(input, inputContext);
     }
 
-    private byte[] getIdAsByte(UUID uuid) {
-      ByteBuffer bb = ByteBuffer.wrap(new byte[16]);
-      bb.putLong(uuid.getMostSignificantBits());
-      bb.putLong(uuid.getLeastSignificantBits());
-      return bb.array();
+    /**
+     * Reads the stored centers, their weights serving as the initial point counts.
+     */
+    private void load(long storedGeneration) {
+      CentersSnapshot snapshot = CentersSnapshot.load(store, state);
+      dimensions = snapshot.getDimensions();
+      centers = snapshot.toArray();
+      counts = new long[snapshot.size()];
+      long[] weights = CenterGenerations.weights(state, snapshot.getGeneration());
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = weights != null && weights.length == counts.length ? Math.max(1L, weights[i]) : 1L;
+      }
+      generation = storedGeneration;
+      dirty = false;
+      LOG.debug("Continuing from {} centers of generation {}", counts.length, generation);
     }
 
-    private Point parseEvent(StreamEvent event) {
-      String[] parts = Bytes.toString(event.getBody()).split(" ");
-      Preconditions.checkArgument(parts.length == 3);
-      return new Point(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+    private void persist() {
+      int k = counts.length;
+      String[] formatted = new String[k];
+      for (int i = 0; i < k; i++) {
+        StringBuilder center = new StringBuilder();
+        for (int d = 0; d < dimensions; d++) {
+          center.append(d == 0 ? "" : ",").append(centers[i * dimensions + d]);
+        }
+        formatted[i] = center.toString();
+      }
+      generation = CenterGenerations.update(store, state, formatted, counts);
+      dirty = false;
+      LOG.debug("Persisted {} centers as generation {}", k, generation);
     }
   }
 
@@ -132,12 +661,157 @@ public class SparkKMeansApp extends AbstractApplication {
    */
   public static final class PointsFlow extends AbstractFlow {
 
+    private final KMeansConfig config;
+
+    public PointsFlow() {
+      this(new KMeansConfig());
+    }
+
+    public PointsFlow(KMeansConfig config) {
+      this.config = config;
+    }
+
     @Override
     protected void configure() {
       setName("PointsFlow");
       setDescription("Reads points information and stores in dataset");
-      addFlowlet("reader", new PointsReader());
+      if (COLUMNAR_FORMAT.equals(config.getPointsFormat())) {
+        addFlowlet("reader", new ColumnarPointsReader(config));
+      } else {
+        addFlowlet("reader", new PointsReader(config));
+      }
       connectStream("pointsStream", "reader");
+      if (config.getCentersUpdateSeconds() > 0) {
+        // Reads the stream next to the reader, saving the reader from passing every point on through a queue
+        addFlowlet("updater", new CentersUpdater(config));
+        connectStream("pointsStream", "updater");
+      }
+    }
+  }
+
+  /**
+   * This Worker deletes points once they are older than the retention. Points are keyed by the time they were
+   * written, see {@link PointKeys}, so the expired points are one key range at the start of the {@code points}
+   * and {@code pointBlocks} datasets, which is deleted in chunks of {@value #CHUNK_SIZE} keys per transaction
+   * without looking at the points that are kept. Keys of any other length, written before points were keyed by
+   * time, are left alone.
+   */
+  public static final class PointsJanitor extends AbstractWorker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PointsJanitor.class);
+
+    /**
+     * Amount of keys deleted in one transaction.
+     */
+    static final int CHUNK_SIZE = 10000;
+
+    /**
+     * How often expired points are looked for.
+     */
+    private static final long INTERVAL_MINUTES = 10L;
+
+    private final int retentionHours;
+    private CountDownLatch stopped;
+
+    public PointsJanitor() {
+      this(new KMeansConfig());
+    }
+
+    public PointsJanitor(KMeansConfig config) {
+      this.retentionHours = config.getRetentionHours();
+    }
+
+    @Override
+    protected void configure() {
+      setName("PointsJanitor");
+      setDescription("Deletes points older than the retention");
+      setProperties(ImmutableMap.of(RETENTION_PROPERTY, Integer.toString(retentionHours)));
+    }
+
+    @Override
+    public void initialize(WorkerContext context) throws Exception {
+      super.initialize(context);
+      stopped = new CountDownLatch(1);
+    }
+
+    @Override
+    public void run() {
+      long retentionMillis = TimeUnit.HOURS.toMillis(
+        Integer.parseInt(getContext().getSpecification().getProperty(RETENTION_PROPERTY)));
+      do {
+        final long cutoff = System.currentTimeMillis() - retentionMillis;
+        for (final String dataset : new String[] { "points", "pointBlocks" }) {
+          try {
+            final byte[][] next = { Bytes.toBytes(0L) };
+            final long[] deleted = { 0L };
+            final long[] skipped = { 0L };
+            while (next[0] != null) {
+              getContext().execute(new TxRunnable() {
+                @Override
+                public void run(DatasetContext context) throws Exception {
+                  next[0] = deleteBefore(context.<Dataset>getDataset(dataset), next[0], cutoff, deleted, skipped);
+                }
+              });
+            }
+            LOG.info("Deleted {} keys of {} written before {}", deleted[0], dataset, cutoff);
+            if (skipped[0] > 0) {
+              LOG.warn("Kept {} keys of {} before {} that are not {} byte point keys",
+                       skipped[0], dataset, cutoff, PointKeys.KEY_LENGTH);
+            }
+          } catch (Exception e) {
+            LOG.warn("Failed to delete expired points of {}, retrying in {} minutes", dataset, INTERVAL_MINUTES, e);
+          }
+        }
+      } while (!awaitStop());
+    }
+
+    @Override
+    public void stop() {
+      stopped.countDown();
+    }
+
+    private boolean awaitStop() {
+      try {
+        return stopped.await(INTERVAL_MINUTES, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return true;
+      }
+    }
+
+    /**
+     * Deletes up to {@value #CHUNK_SIZE} points keys from {@code start} up to those of points written at
+     * {@code cutoff}, counting them in {@code deleted}. Keys that are not point keys are kept and counted in
+     * {@code skipped}.
+     *
+     * @return the key to continue from, {@code null} once all expired keys were seen
+     */
+    static byte[] deleteBefore(Dataset dataset, byte[] start, long cutoff, long[] deleted, long[] skipped) {
+      byte[] stop = Bytes.toBytes(cutoff);
+      List<byte[]> keys = new ArrayList<>();
+      CloseableIterator<? extends KeyValue<byte[], ?>> scanner = dataset instanceof KeyValueTable
+        ? ((KeyValueTable) dataset).scan(start, stop) : ((ObjectStore<?>) dataset).scan(start, stop);
+      try {
+        while (scanner.hasNext() && keys.size() < CHUNK_SIZE) {
+          keys.add(scanner.next().getKey());
+        }
+      } finally {
+        scanner.close();
+      }
+      for (byte[] key : keys) {
+        if (key.length != PointKeys.KEY_LENGTH) {
+          LOG.debug("Keeping key {} that is not a point key", Bytes.toStringBinary(key));
+          skipped[0]++;
+          continue;
+        }
+        if (dataset instanceof KeyValueTable) {
+          ((KeyValueTable) dataset).delete(key);
+        } else {
+          ((ObjectStore<?>) dataset).delete(key);
+        }
+        deleted[0]++;
+      }
+      return keys.size() < CHUNK_SIZE ? null : Bytes.add(keys.get(keys.size() - 1), new byte[1]);
     }
   }
 
@@ -157,30 +831,192 @@ public class SparkKMeansApp extends AbstractApplication {
   }
 
   /**
-   * Centers Service handler.
+   * Centers Service handler. Serves the centers from an in-memory snapshot, which is reloaded once another
+   * generation of centers is activated, see {@link CenterGenerations}. Responses carry the generation as their
+   * ETag, so clients can poll with {@code If-None-Match} and get a 304 as long as the centers did not change.
    */
   public static final class CentersServiceHandler extends AbstractHttpServiceHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(CentersService.class);
 
+    /**
+     * How long a snapshot is served before checking whether a new generation was written.
+     */
+    private static final long REFRESH_INTERVAL_MILLIS = 1000L;
+
+    private static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+
     @UseDataSet("centers")
     private ObjectStore<String> store;
 
+    @UseDataSet(KMeansState.DATASET)
+    private KeyValueTable state;
+
+    private CentersSnapshot snapshot;
+    private long checkedAt;
+
+    @Path("centers")
+    @GET
+    public void centers(HttpServiceRequest request, HttpServiceResponder responder) {
+      CentersSnapshot current = snapshot();
+      if (notModified(request, responder, current)) {
+        return;
+      }
+      if (current.size() == 0) {
+        LOG.debug("No centers found");
+        responder.sendString(HttpURLConnection.HTTP_NO_CONTENT, "No centers found", Charsets.UTF_8);
+        return;
+      }
+      responder.send(HttpURLConnection.HTTP_OK, Charsets.UTF_8.encode(current.toText()),
+                     "text/plain; charset=utf-8", ImmutableMap.of(HttpHeaders.ETAG, current.getETag()));
+    }
+
     @Path("centers/{index}")
     @GET
     public void centers(HttpServiceRequest request, HttpServiceResponder responder,
                         @PathParam("index") int index) {
       LOG.debug("Try to get centers for index: {}", index);
 
-      String centers = store.read(Bytes.toBytes(index));
+      CentersSnapshot current = snapshot();
+      if (notModified(request, responder, current)) {
+        return;
+      }
+      String centers = current.get(index);
       if (centers == null) {
         LOG.debug("No centers found");
         responder.sendString(HttpURLConnection.HTTP_NO_CONTENT,
                              String.format("No centers found for index: %s", index), Charsets.UTF_8);
       } else {
         LOG.debug("Retrieved centers: {}", centers);
-        responder.sendString(centers);
+        responder.send(HttpURLConnection.HTTP_OK, Charsets.UTF_8.encode(centers),
+                       "text/plain; charset=utf-8", ImmutableMap.of(HttpHeaders.ETAG, current.getETag()));
       }
     }
+
+    /**
+     * Labels a batch of points with the index of their closest center, one index per line in the order of
+     * the points. The points are sent as {@link PointsPayload} text, or as its binary encoding when sent as
+     * {@code application/octet-stream}.
+     */
+    @Path("classify")
+    @POST
+    public void classify(HttpServiceRequest request, HttpServiceResponder responder) {
+      final CentersSnapshot current = snapshot();
+      if (current.size() == 0) {
+        LOG.debug("No centers found");
+        responder.sendString(HttpURLConnection.HTTP_NO_CONTENT, "No centers found", Charsets.UTF_8);
+        return;
+      }
+      String contentType = request.getHeader(HttpHeaders.CONTENT_TYPE);
+      String encoding = contentType != null && contentType.startsWith(BINARY_CONTENT_TYPE)
+        ? PointsPayload.BINARY_ENCODING : PointsPayload.TEXT_ENCODING;
+
+      final StringBuilder labels = new StringBuilder();
+      final double[] distances = new double[current.size()];
+      try {
+        PointsPayload.decode(encoding, request.getContent(), new double[current.getDimensions()],
+                             new PointsPayload.Sink() {
+          @Override
+          public void add(double[] point) {
+            labels.append(current.nearest(point, 0, distances)).append('\n');
+          }
+        });
+      } catch (IllegalArgumentException e) {
+        responder.sendError(HttpURLConnection.HTTP_BAD_REQUEST, e.getMessage());
+        return;
+      }
+      responder.send(HttpURLConnection.HTTP_OK, Charsets.UTF_8.encode(labels.toString()),
+                     "text/plain; charset=utf-8", ImmutableMap.of(HttpHeaders.ETAG, current.getETag()));
+    }
+
+    /**
+     * Reports how far every points reader lagged behind the stream in its last batch, responding with a 503
+     * once any of them exceeds its latency or batch size budget. Readers only record batches they commit, so a reader that
+     * fell idle keeps its last lag; {@code idleMillis} tells how long ago that was.
+     */
+    @Path("health")
+    @GET
+    public void health(HttpServiceRequest request, HttpServiceResponder responder) {
+      long now = System.currentTimeMillis();
+      Map<String, Map<String, Long>> readers = IngestLag.readAll(state);
+      long maxLag = 0L;
+      boolean lagging = false;
+      for (Map<String, Long> reader : readers.values()) {
+        maxLag = Math.max(maxLag, reader.get("lagMillis"));
+        lagging |= IngestLag.isLagging(reader);
+        reader.put("idleMillis", Math.max(0L, now - reader.get("committedAt")));
+      }
+      responder.sendJson(lagging ? HttpURLConnection.HTTP_UNAVAILABLE : HttpURLConnection.HTTP_OK,
+                         ImmutableMap.of("status", lagging ? "lagging" : "ok", "lagMillis", maxLag,
+                                         "readers", readers));
+    }
+
+    /**
+     * Lists the active generation of centers and the generations that can be rolled back to.
+     */
+    @Path("generations")
+    @GET
+    public void generations(HttpServiceRequest request, HttpServiceResponder responder) {
+      responder.sendJson(ImmutableMap.of("active", CenterGenerations.active(state),
+                                         "retained", CenterGenerations.retained(store, state)));
+    }
+
+    /**
+     * Points the service and the {@link CentersUpdater} to a retained generation of centers. The next run of
+     * the Spark program publishes a newer generation again.
+     */
+    @Path("generations/{generation}/activate")
+    @POST
+    public void activate(HttpServiceRequest request, HttpServiceResponder responder,
+                         @PathParam("generation") long generation) {
+      if (!CenterGenerations.activate(store, state, generation)) {
+        responder.sendError(HttpURLConnection.HTTP_NOT_FOUND,
+                            String.format("Generation %d of centers is not retained", generation));
+        return;
+      }
+      LOG.info("Activated generation {} of centers", generation);
+      // Serve the activated generation right away
+      snapshot = null;
+      responder.sendStatus(HttpURLConnection.HTTP_OK);
+    }
+
+    private CentersSnapshot snapshot() {
+      long now = System.currentTimeMillis();
+      if (snapshot == null || now - checkedAt >= REFRESH_INTERVAL_MILLIS) {
+        if (snapshot == null || CentersSnapshot.readGeneration(state) != snapshot.getGeneration()) {
+          snapshot = CentersSnapshot.load(store, state);
+          LOG.debug("Loaded {} centers of generation {}", snapshot.size(), snapshot.getGeneration());
+        }
+        checkedAt = now;
+      }
+      return snapshot;
+    }
+
+    private boolean notModified(HttpServiceRequest request, HttpServiceResponder responder,
+                                CentersSnapshot current) {
+      if (!current.getETag().equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+        return false;
+      }
+      responder.sendStatus(HttpURLConnection.HTTP_NOT_MODIFIED, ImmutableMap.of(HttpHeaders.ETAG, current.getETag()));
+      return true;
+    }
+  }
+
+  /**
+   * Returns the amount of coordinates of every point, as configured for the given flowlet.
+   */
+  private static int dimensions(FlowletContext context) {
+    return Integer.parseInt(context.getSpecification().getProperty(DIMENSIONS_PROPERTY));
+  }
+
+  /**
+   * Creates the lag bookkeeping of a points reader instance from the budget set in its properties.
+   */
+  private static IngestLag ingestLag(FlowletContext context) {
+    FlowletSpecification specification = context.getSpecification();
+    int maxLatencySeconds = Integer.parseInt(specification.getProperty(MAX_LATENCY_PROPERTY));
+    return new IngestLag(context.getName() + "." + context.getInstanceId(),
+                         TimeUnit.SECONDS.toMillis(maxLatencySeconds),
+                         Integer.parseInt(specification.getProperty(MAX_BATCH_PROPERTY)));
   }
 }
@@ -22,13 +22,20 @@
 
 package com.projectsix
 
-import breeze.linalg.{DenseVector, Vector, squaredDistance}
 import co.cask.cdap.api.common.Bytes
+import co.cask.cdap.api.data.DatasetContext
+import co.cask.cdap.api.data.batch.Split
+import co.cask.cdap.api.dataset.Dataset
+import co.cask.cdap.api.dataset.lib.{KeyValueTable, ObjectStore}
 import co.cask.cdap.api.spark.{SparkExecutionContext, SparkMain}
 import org.apache.spark.SparkContext
 import org.apache.spark.rdd.RDD
 import org.slf4j.{Logger, LoggerFactory}
 
+import java.util.Random
+
+import scala.collection.JavaConverters._
+
 /**
  * Implementation of KMeans Clustering Spark Program.
  */
@@ -37,70 +44,342 @@ class SparkKMeansProgram extends SparkMain {
   import SparkKMeansProgram._
 
   override def run(implicit sec: SparkExecutionContext) {
+    val started = System.currentTimeMillis()
     val sc = new SparkContext
+    val telemetry = new KMeansTelemetry(sc, sec.getMetrics)
     val arguments = Option(sec.getRuntimeArguments.get("args"))
     val args = arguments.map(_.split("\\s")).getOrElse(Array())
 
     LOG.info("Running with arguments {}", args)
+    val options = KMeansOptions.parse(args)
     // Amount of centers to calculate
-    val k = if (args.nonEmpty) args(0).toInt else 2
-    val convergeDist = if (args.length > 1) args(1).toDouble else 0.5d
+    val k = options.k
+    val runStart = sec.getLogicalStartTime
+    val dim = Option(sec.getSpecification.getProperty(SparkKMeansApp.DIMENSIONS_PROPERTY))
+      .map(_.toInt).getOrElse(SparkKMeansApp.DEFAULT_DIMENSIONS)
+
+    // An incremental run continues from the centers of the previous run and only reads newer points
+    val previous = if (options.mode == KMeansOptions.IncrementalMode) readState(k, dim) else None
+    if (options.mode == KMeansOptions.IncrementalMode && previous.isEmpty) {
+      LOG.warn("No previous centers found for {} centers, calculating from all points", k)
+    }
 
     LOG.info("Processing points data")
 
-    val linesDataset: RDD[(Array[Byte], Point)] = sc.fromDataset("points")
-    val lines = linesDataset.values
-    val data = lines.map(pointVector).cache()
+    val format = Option(sec.getSpecification.getProperty(SparkKMeansApp.POINTS_FORMAT_PROPERTY))
+      .getOrElse(SparkKMeansApp.OBJECT_FORMAT)
+    val precision = Option(sec.getSpecification.getProperty(SparkKMeansApp.PRECISION_PROPERTY))
+      .map(PointBlock.checkPrecision).getOrElse(PointBlock.DOUBLE_PRECISION)
+    val range = readRange(previous.map(_.watermark), options, runStart)
+    range.foreach(r => LOG.info("Reading points written between {} and {}", r._1, r._2))
+    // Points are cached at the configured precision, trading accuracy for memory
+    val data = readBlocks(sc, format, dim, range).map(_.withPrecision(precision)).cache()
 
     LOG.info("Calculating centers")
 
-    val kPoints = data.takeSample(withReplacement = false, k, 42)
+    // Centers are kept flat, the coordinates of center i being stored at [i * dim, (i + 1) * dim)
+    val centers: Array[Double] = previous match {
+      case Some(state) => state.centers.clone()
+      case None if options.restarts > 1 => new Array[Double](k * dim)
+      case None if options.init == KMeansOptions.ParallelInit =>
+        ParallelInitializer.initialize(data, k, dim, options.initSteps, options.seed)
+      case None => points(data).takeSample(withReplacement = false, k, options.seed).flatten
+    }
+
+    // Each center moves towards the mean of its new points, weighted against what it already represents.
+    // A full run starts from nothing, an incremental run from the stored centers and a mini-batch run
+    // from the points of all previous batches, so that its steps shrink as more points are seen.
+    val priorCenters = previous.map(_.centers).getOrElse(centers)
+    val priorWeights = previous.map(_.weights.clone()).getOrElse(Array.fill(k)(0L))
+    val counts = Array.fill(k)(0L)
+
+    // Distance bounds of every point and the centers they were computed for, when pruning the assignment
+    var bounds: Option[RDD[(Array[PrunedAssignment.BlockBounds], CenterStats)]] = None
+    var boundCenters: Option[Array[Double]] = None
+
+    var iteration = 0
     var tempDist = 1.0
-    while (tempDist > convergeDist) {
-      val closest = data.map(p => (closestPoint(p, kPoints), (p, 1)))
-      val pointStats = closest.reduceByKey { case ((x1, y1), (x2, y2)) => (x1 + x2, y1 + y2)}
-      val newPoints = pointStats.map { pair =>
-        (pair._1, pair._2._1 * (1.0 / pair._2._2))
-      }.collectAsMap()
-      tempDist = 0.0
-      for (i <- 0 until k) {
-        tempDist += squaredDistance(kPoints(i), newPoints(i))
+    var meanCost = Double.NaN
+    var stopReason: Option[String] = None
+
+    if (options.restarts > 1) {
+      val initial = MultiRestart.initialize(data, options, dim)
+      val result = MultiRestart.run(data, initial, options, dim, telemetry, started)
+      Array.copy(result.centers, 0, centers, 0, centers.length)
+      Array.copy(result.counts, 0, counts, 0, k)
+      iteration = result.iterations
+      tempDist = result.delta
+      meanCost = result.meanCost
+      stopReason = Some(result.stopReason)
+    }
+
+    while (stopReason.isEmpty) {
+      telemetry.startIteration()
+      // Ship the centers once per iteration and sum up points per partition, so the loop neither
+      // shuffles nor allocates per point. A mini-batch iteration only looks at a random fraction of them.
+      val fraction = if (options.mode == KMeansOptions.MiniBatchMode) options.batchFraction else 1.0
+      val iterationSeed = options.seed + iteration
+      val stats = if (options.assign == KMeansOptions.PrunedAssign) {
+        val current = centers.clone()
+        val geometry = sc.broadcast(PrunedAssignment.geometry(current, boundCenters, dim))
+        val assigned = PrunedAssignment.assign(data, bounds, geometry, k, dim, fraction, iterationSeed)
+        if ((iteration + 1) % PrunedAssignment.CheckpointInterval == 0) {
+          PrunedAssignment.checkpoint(assigned)
+        }
+        val assignedStats = assigned.map(_._2).treeAggregate(new CenterStats(k, dim))(
+          (a, b) => a.merge(b), (a, b) => a.merge(b))
+        bounds.foreach(_.unpersist())
+        geometry.unpersist()
+        bounds = Some(assigned)
+        boundCenters = Some(current)
+        assignedStats
+      } else {
+        assign(data, centers, k, dim, fraction, iterationSeed)
       }
-      for (newP <- newPoints) {
-        kPoints(newP._1) = newP._2
+
+      tempDist = 0.0
+      for (i <- 0 until k if stats.counts(i) > 0) {
+        val base = i * dim
+        val weight = priorWeights(i).toDouble
+        val total = weight + stats.counts(i)
+        for (d <- 0 until dim) {
+          val prior = if (options.mode == KMeansOptions.MiniBatchMode) centers(base + d) else priorCenters(base + d)
+          val updated = (prior * weight + stats.sums(base + d)) / total
+          tempDist += (updated - centers(base + d)) * (updated - centers(base + d))
+          centers(base + d) = updated
+        }
+        if (options.mode == KMeansOptions.MiniBatchMode) {
+          priorWeights(i) += stats.counts(i)
+        }
       }
-      LOG.debug("Finished iteration (delta = {})", tempDist)
+      Array.copy(stats.counts, 0, counts, 0, k)
+      val reassigned = if (options.assign == KMeansOptions.PrunedAssign && iteration > 0) stats.reassigned else -1L
+      iteration += 1
+      telemetry.endIteration(iteration, tempDist, stats, reassigned)
+
+      val previousMeanCost = meanCost
+      meanCost = stats.cost / math.max(1L, stats.counts.sum)
+      stopReason = stopRule(options, iteration, tempDist, previousMeanCost, meanCost,
+                            System.currentTimeMillis() - started)
     }
 
-    LOG.info("Center count {}", kPoints.length)
+    bounds.foreach(_.unpersist())
+    LOG.info(s"Center count $k after $iteration iterations, stopped by ${stopReason.get}")
 
+    // Remember how many points every center represents, so a later incremental run can continue from here
+    val weights = options.mode match {
+      case KMeansOptions.MiniBatchMode => priorWeights
+      case _ => Array.tabulate(k)(i => priorWeights(i) + counts(i))
+    }
+    val summary = new RunSummary(runStart, System.currentTimeMillis() - started, options.mode, options.assign,
+                                 dim, iteration, tempDist, meanCost, stopReason.get, counts,
+                                 telemetry.totalShuffleBytes)
     LOG.info("Writing centers data")
-    sc.parallelize(kPoints.zipWithIndex
-      .map(p => {(Bytes.toBytes(p._2), p._1.toArray.mkString(","))}))
-      .saveAsDataset("centers")
+    writeState(watermark(range, runStart), centers, dim, weights, summary)
 
     LOG.info("Done!")
   }
+
+  /**
+   * Reads the points as blocks from the dataset matching the storage format, optionally limited to the
+   * points written within a `[from, to)` time range.
+   */
+  private def readBlocks(sc: SparkContext, format: String, dim: Int, range: Option[(Long, Long)])
+                        (implicit sec: SparkExecutionContext): RDD[PointBlock] = {
+    format match {
+      case SparkKMeansApp.COLUMNAR_FORMAT =>
+        val blocks: RDD[(Array[Byte], Array[Byte])] = sc.fromDataset(BlocksDataset, Map[String, String](),
+                                                                     range.map(r => splits(BlocksDataset, r)))
+        blocks.values.map(PointBlock.decode)
+      case _ =>
+        val lines: RDD[(Array[Byte], DensePoint)] = sc.fromDataset(PointsDataset, Map[String, String](),
+                                                                   range.map(r => splits(PointsDataset, r)))
+        lines.values.mapPartitions(_.grouped(PointBlock.DEFAULT_CAPACITY).map(points => pointBlock(points, dim)))
+    }
+  }
+
+  /**
+   * Computes the splits of a points dataset covering the keys of points written within `[from, to)`.
+   */
+  private def splits(datasetName: String, range: (Long, Long))
+                    (implicit sec: SparkExecutionContext): Iterable[Split] = {
+    val (from, to) = (Bytes.toBytes(range._1), Bytes.toBytes(range._2))
+    Transaction((context: DatasetContext) => {
+      val dataset: Dataset = context.getDataset(datasetName)
+      dataset match {
+        case store: ObjectStore[_] => store.getSplits(-1, from, to)
+        case table: KeyValueTable => table.getSplits(-1, from, to)
+      }
+    }).asScala
+  }
+
+  /**
+   * Reads the centers and their weights written by the previous run, if there are exactly `k` of them of
+   * `dim` dimensions.
+   */
+  private def readState(k: Int, dim: Int)(implicit sec: SparkExecutionContext): Option[CentersState] = {
+    Transaction((context: DatasetContext) => {
+      val centers: ObjectStore[String] = context.getDataset("centers")
+      val state: KeyValueTable = context.getDataset(StateDataset)
+      val watermark = Option(state.read(WatermarkKey))
+      val stored = CentersSnapshot.load(centers, state)
+      val weights = Option(CenterGenerations.weights(state, stored.getGeneration))
+      if (watermark.isEmpty || weights.forall(_.length != k) || stored.size != k || stored.getDimensions != dim) {
+        None
+      } else {
+        Some(CentersState(Bytes.toLong(watermark.get), stored.toArray, weights.get))
+      }
+    })
+  }
+
+  /**
+   * Publishes the centers as a new generation together with the bookkeeping and summary of this run, all
+   * in one transaction, so readers of the centers switch to them at once.
+   */
+  private def writeState(watermark: Long, centers: Array[Double], dim: Int, weights: Array[Long],
+                         summary: RunSummary)(implicit sec: SparkExecutionContext) {
+    Transaction((context: DatasetContext) => {
+      val store: ObjectStore[String] = context.getDataset("centers")
+      val state: KeyValueTable = context.getDataset(StateDataset)
+      val generation = CenterGenerations.publish(store, state, centers.grouped(dim).map(_.mkString(",")).toArray,
+                                                 weights)
+      state.write(WatermarkKey, Bytes.toBytes(watermark))
+      val runs: ObjectStore[RunSummary] = context.getDataset(RunSummary.DATASET)
+      runs.write(Bytes.toBytes(summary.getStartTime), summary)
+      LOG.info("Wrote generation {} of centers", generation)
+    })
+  }
 }
 
 object SparkKMeansProgram {
 
   private final val LOG: Logger = LoggerFactory.getLogger(classOf[SparkKMeansProgram])
 
-  private def pointVector(point: Point): Vector[Double] = {
-    DenseVector(Array(point.getX, point.getX, point.getZ).map(_.doubleValue()))
+  /** Dataset holding the bookkeeping of the last run. */
+  final val StateDataset = KMeansState.DATASET
+
+  private final val PointsDataset = "points"
+  private final val BlocksDataset = "pointBlocks"
+
+  private final val WatermarkKey = Bytes.toBytes(KMeansState.WATERMARK_KEY)
+
+  /**
+   * Centers of a previous run, the amount of points each of them represents and the point timestamp up to
+   * which they were calculated.
+   */
+  private case class CentersState(watermark: Long, centers: Array[Double], weights: Array[Long])
+
+  private def pointBlock(points: Seq[DensePoint], dim: Int): PointBlock = {
+    val builder = new PointBlock.Builder(dim, points.size)
+    val coordinates = new Array[Double](dim)
+    for (point <- points) {
+      require(point.getDimensions == dim, s"Expected points of $dim dimensions but found $point")
+      point.copyTo(coordinates, 0)
+      builder.add(coordinates, 0)
+    }
+    builder.build()
+  }
+
+  /**
+   * Returns the `[from, to)` time range of the points a run started at `runStart` reads, if limited: the
+   * points written since the `watermark` of the previous run, if continuing from it, within the time range
+   * of the options.
+   */
+  private[projectsix] def readRange(watermark: Option[Long], options: KMeansOptions,
+                                    runStart: Long): Option[(Long, Long)] = {
+    (watermark.map(since => (since, runStart)), options.timeRange(runStart)) match {
+      case (Some(since), Some(limit)) =>
+        val start = math.max(since._1, limit._1)
+        Some((start, math.max(start, math.min(since._2, limit._2))))
+      case (since, limit) => since.orElse(limit)
+    }
+  }
+
+  /**
+   * Returns the timestamp up to which a run started at `runStart` read the points, so the next incremental run
+   * continues from there. A range ending before `runStart` leaves the points after it to the next run.
+   */
+  private[projectsix] def watermark(range: Option[(Long, Long)], runStart: Long): Long = {
+    range.map(r => math.min(r._2, runStart)).getOrElse(runStart)
+  }
+
+  /**
+   * Returns the rule that ends the run after the given iteration, if any. `previousCost` and `cost` are the
+   * mean squared distances of the points to their centers in the previous and this iteration.
+   */
+  private[projectsix] def stopRule(options: KMeansOptions, iteration: Int, delta: Double,
+                                   previousCost: Double, cost: Double, elapsedMillis: Long): Option[String] = {
+    convergenceRule(options, delta, previousCost, cost).orElse(budgetRule(options, iteration, elapsedMillis))
+  }
+
+  /**
+   * Returns the rule telling that the centers settled, if any.
+   */
+  private[projectsix] def convergenceRule(options: KMeansOptions, delta: Double,
+                                          previousCost: Double, cost: Double): Option[String] = {
+    if (delta <= options.convergeDist) {
+      Some(RunSummary.CONVERGED)
+    } else if (options.minImprovement > 0 && previousCost > 0 &&
+               (previousCost - cost) / previousCost < options.minImprovement) {
+      Some(RunSummary.MIN_IMPROVEMENT)
+    } else {
+      None
+    }
+  }
+
+  /**
+   * Returns the rule telling that the run used up its iterations or time, if any.
+   */
+  private[projectsix] def budgetRule(options: KMeansOptions, iteration: Int, elapsedMillis: Long): Option[String] = {
+    if (iteration >= options.maxIterations) {
+      Some(RunSummary.MAX_ITERATIONS)
+    } else if (options.maxSeconds > 0 && elapsedMillis >= options.maxSeconds * 1000L) {
+      Some(RunSummary.TIME_BUDGET)
+    } else {
+      None
+    }
+  }
+
+  /**
+   * Assigns every point, or a random `fraction` of them, to its closest center and sums them up per center.
+   */
+  private[projectsix] def assign(data: RDD[PointBlock], centers: Array[Double], k: Int, dim: Int,
+                                 fraction: Double, iterationSeed: Long): CenterStats = {
+    val broadcastCenters = data.sparkContext.broadcast(centers.clone())
+    val stats = data.mapPartitionsWithIndex { (partition, blocks) =>
+      val kernel = new DistanceKernel(broadcastCenters.value, dim)
+      val distances = new Array[Double](k)
+      val partitionStats = new CenterStats(k, dim)
+      val point = new Array[Double](dim)
+      val random = new Random(iterationSeed * 31 + partition)
+      blocks.foreach { block =>
+        var i = 0
+        while (i < block.getSize) {
+          if (fraction >= 1.0 || random.nextDouble() < fraction) {
+            block.copyPoint(i, point, 0)
+            val center = kernel.nearest(point, 0, distances)
+            partitionStats.add(center, point, 0)
+            partitionStats.cost += distances(center)
+          }
+          i += 1
+        }
+      }
+      Iterator.single(partitionStats)
+    }.treeAggregate(new CenterStats(k, dim))((a, b) => a.merge(b), (a, b) => a.merge(b))
+    broadcastCenters.unpersist()
+    stats
   }
 
-  private def closestPoint(p: Vector[Double], centers: Array[Vector[Double]]): Int = {
-    var bestIndex = 0
-    var closest = Double.PositiveInfinity
-    for (i <- centers.indices) {
-      val tempDist = squaredDistance(p, centers(i))
-      if (tempDist < closest) {
-        closest = tempDist
-        bestIndex = i
+  /**
+   * Unpacks blocks into single points. Only meant for sampling, as it allocates an array per point.
+   */
+  private[projectsix] def points(blocks: RDD[PointBlock]): RDD[Array[Double]] = {
+    blocks.flatMap { block =>
+      (0 until block.getSize).iterator.map { i =>
+        val point = new Array[Double](block.getDimensions)
+        block.copyPoint(i, point, 0)
+        point
       }
     }
-    bestIndex
   }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import co.cask.cdap.api.common.Bytes;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link CenterGenerations} tests, on in-memory datasets.
+ */
+public class CenterGenerationsTest {
+
+  private MemoryObjectStore<String> store;
+  private MemoryKeyValueTable state;
+
+  @Before
+  public void setUp() {
+    store = new MemoryObjectStore<>();
+    state = new MemoryKeyValueTable(KMeansState.DATASET);
+  }
+
+  @Test
+  public void testPublish() {
+    Assert.assertEquals(1L, CenterGenerations.publish(store, state, centers(1), new long[] { 3, 4 }));
+    Assert.assertEquals(2L, CenterGenerations.update(store, state, centers(2), new long[] { 5, 4 }));
+    Assert.assertEquals(2L, CenterGenerations.active(state));
+    Assert.assertEquals(2L, CenterGenerations.latest(state));
+    Assert.assertEquals(ImmutableList.copyOf(centers(2)), CenterGenerations.read(store, 2L));
+    Assert.assertArrayEquals(new long[] { 3, 4 }, CenterGenerations.weights(state, 1L));
+    Assert.assertArrayEquals(new long[] { 5, 4 }, CenterGenerations.weights(state, 2L));
+    Assert.assertEquals(ImmutableList.of(2L, 1L), CenterGenerations.retained(store, state));
+  }
+
+  @Test
+  public void testUpdatesKeepRuns() {
+    CenterGenerations.publish(store, state, centers(1), new long[] { 1, 1 });
+    for (int i = 2; i <= 12; i++) {
+      CenterGenerations.update(store, state, centers(i), new long[] { i, i });
+    }
+    // Updates are pruned once they are no longer among the last ones, the run is kept
+    Assert.assertEquals(ImmutableList.of(12L, 11L, 10L, 9L, 8L, 1L), CenterGenerations.retained(store, state));
+    Assert.assertTrue(CenterGenerations.read(store, 7L).isEmpty());
+    Assert.assertNull(state.read(Bytes.toBytes(KMeansState.WEIGHTS_KEY + ".7")));
+
+    Assert.assertTrue(CenterGenerations.activate(store, state, 1L));
+    Assert.assertEquals(1L, CenterGenerations.active(state));
+    CentersSnapshot snapshot = CentersSnapshot.load(store, state);
+    Assert.assertEquals(1L, snapshot.getGeneration());
+    Assert.assertEquals(centers(1)[1], snapshot.get(1));
+    Assert.assertArrayEquals(new long[] { 1, 1 }, CenterGenerations.weights(state, 1L));
+
+    Assert.assertFalse(CenterGenerations.activate(store, state, 7L));
+    Assert.assertFalse(CenterGenerations.activate(store, state, 13L));
+    Assert.assertEquals(1L, CenterGenerations.active(state));
+
+    // Publishing after a rollback continues after the newest generation
+    Assert.assertEquals(13L, CenterGenerations.update(store, state, centers(13), new long[] { 2, 2 }));
+    Assert.assertEquals(ImmutableList.of(13L, 12L, 11L, 10L, 9L, 1L), CenterGenerations.retained(store, state));
+  }
+
+  @Test
+  public void testRunsPruned() {
+    for (int i = 1; i <= 8; i++) {
+      CenterGenerations.publish(store, state, centers(i), new long[] { i, i });
+      for (int u = 0; u < 2; u++) {
+        CenterGenerations.update(store, state, centers(i), new long[] { i, i });
+      }
+    }
+    // Runs published generations 1, 4, ..., 22 and only the last five of them are kept
+    Assert.assertEquals(ImmutableList.of(24L, 23L, 22L, 21L, 20L, 19L, 16L, 13L, 10L),
+                        CenterGenerations.retained(store, state));
+    Assert.assertFalse(CenterGenerations.activate(store, state, 7L));
+    Assert.assertTrue(CenterGenerations.activate(store, state, 10L));
+    Assert.assertArrayEquals(new long[] { 4, 4 }, CenterGenerations.weights(state, 10L));
+  }
+
+  @Test
+  public void testLegacyWeights() {
+    state.write(KMeansState.WEIGHTS_KEY, Bytes.toBytes("7,8"));
+    Assert.assertArrayEquals(new long[] { 7, 8 }, CenterGenerations.weights(state, 0L));
+    CenterGenerations.publish(store, state, centers(1), new long[] { 1, 2 });
+    Assert.assertArrayEquals(new long[] { 1, 2 }, CenterGenerations.weights(state, 1L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWeightsMismatch() {
+    CenterGenerations.publish(store, state, centers(1), new long[] { 1 });
+  }
+
+  private static String[] centers(int generation) {
+    return new String[] { generation + ",0", "0," + generation };
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares assigning points one center at a time through {@link Distances} with the transposed
+ * {@link DistanceKernel} and {@link FloatDistanceKernel}. The scores are the time to assign {@value #POINTS}
+ * points. Run with {@code mvn test -Pbenchmark -Dbenchmark=DistanceBenchmark}, on a JVM that uses AVX2 for
+ * its SIMD code, which {@code -XX:UseAVX=2} enforces.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+  static final int POINTS = 4096;
+
+  @Param({"2", "3", "16", "64"})
+  public int dimensions;
+
+  @Param({"8", "64", "256"})
+  public int k;
+
+  private double[] points;
+  private double[] centers;
+  private float[] floatPoints;
+  private DistanceKernel kernel;
+  private FloatDistanceKernel floatKernel;
+  private double[] distances;
+  private float[] floatDistances;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    points = KMeansBenchmark.randomPoints(POINTS, dimensions, k, 1L);
+    centers = LocalKMeans.sample(points, dimensions, k, 2L);
+    floatPoints = new float[points.length];
+    float[] floatCenters = new float[centers.length];
+    for (int i = 0; i < points.length; i++) {
+      floatPoints[i] = (float) points[i];
+    }
+    for (int i = 0; i < centers.length; i++) {
+      floatCenters[i] = (float) centers[i];
+    }
+    kernel = new DistanceKernel(centers, dimensions);
+    floatKernel = new FloatDistanceKernel(floatCenters, dimensions);
+    distances = new double[k];
+    floatDistances = new float[k];
+  }
+
+  @Benchmark
+  public int scalar() {
+    int sum = 0;
+    for (int p = 0; p < POINTS; p++) {
+      sum += Distances.nearest(points, p * dimensions, centers, dimensions);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int kernel() {
+    int sum = 0;
+    for (int p = 0; p < POINTS; p++) {
+      sum += kernel.nearest(points, p * dimensions, distances);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int floatKernel() {
+    int sum = 0;
+    for (int p = 0; p < POINTS; p++) {
+      sum += floatKernel.nearest(floatPoints, p * dimensions, floatDistances);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * {@link DistanceKernel} and {@link FloatDistanceKernel} tests, comparing them with {@link Distances}.
+ */
+public class DistanceKernelTest {
+
+  @Test
+  public void testSameAsDistances() {
+    Random random = new Random(11L);
+    for (int dimensions : new int[] { 1, 2, 3, 7, 16 }) {
+      for (int k : new int[] { 1, 2, 5, 33 }) {
+        double[] centers = randomCoordinates(random, k * dimensions);
+        DistanceKernel kernel = new DistanceKernel(centers, dimensions);
+        Assert.assertEquals(k, kernel.size());
+        Assert.assertEquals(dimensions, kernel.getDimensions());
+
+        double[] distances = new double[k];
+        for (int p = 0; p < 200; p++) {
+          // Points are read at an offset, as from a flat array of several points
+          double[] point = randomCoordinates(random, dimensions + 3);
+          int nearest = kernel.nearest(point, 3, distances);
+          Assert.assertEquals(Distances.nearest(point, 3, centers, dimensions), nearest);
+          for (int i = 0; i < k; i++) {
+            double expected = Distances.squared(point, 3, centers, i * dimensions, dimensions);
+            Assert.assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(distances[i]));
+          }
+          Assert.assertEquals(Distances.nearestSquared(point, 3, centers, dimensions), distances[nearest], 0.0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTies() {
+    // Two copies of the same center, and a point halfway between two others
+    double[] centers = { 4, 4, 0, 0, 0, 0, 2, 0 };
+    double[] distances = new double[4];
+    DistanceKernel kernel = new DistanceKernel(centers, 2);
+    Assert.assertEquals(1, Distances.nearest(new double[] { 0, 0 }, 0, centers, 2));
+    Assert.assertEquals(1, kernel.nearest(new double[] { 0, 0 }, 0, distances));
+    Assert.assertEquals(1, Distances.nearest(new double[] { 1, 0 }, 0, centers, 2));
+    Assert.assertEquals(1, kernel.nearest(new double[] { 1, 0 }, 0, distances));
+    Assert.assertEquals(Distances.nearest(new double[] { 3, 2 }, 0, centers, 2),
+                        kernel.nearest(new double[] { 3, 2 }, 0, distances));
+
+    float[] floatDistances = new float[4];
+    FloatDistanceKernel floatKernel = new FloatDistanceKernel(toFloats(centers), 2);
+    Assert.assertEquals(1, floatKernel.nearest(new float[] { 0, 0 }, 0, floatDistances));
+    Assert.assertEquals(1, floatKernel.nearest(new float[] { 1, 0 }, 0, floatDistances));
+  }
+
+  @Test
+  public void testFloatCloseToDistances() {
+    Random random = new Random(13L);
+    for (int dimensions : new int[] { 1, 3, 16 }) {
+      for (int k : new int[] { 1, 5, 33 }) {
+        double[] centers = toDoubles(toFloats(randomCoordinates(random, k * dimensions)));
+        FloatDistanceKernel kernel = new FloatDistanceKernel(toFloats(centers), dimensions);
+        Assert.assertEquals(k, kernel.size());
+        Assert.assertEquals(dimensions, kernel.getDimensions());
+
+        float[] distances = new float[k];
+        for (int p = 0; p < 200; p++) {
+          double[] point = toDoubles(toFloats(randomCoordinates(random, dimensions)));
+          int nearest = kernel.nearest(toFloats(point), 0, distances);
+          double closest = Distances.nearestSquared(point, 0, centers, dimensions);
+          for (int i = 0; i < k; i++) {
+            double expected = Distances.squared(point, 0, centers, i * dimensions, dimensions);
+            Assert.assertEquals(expected, distances[i], expected * 1e-5);
+          }
+          // Rounding may only pick a different center if it is nearly as close
+          double picked = Distances.squared(point, 0, centers, nearest * dimensions, dimensions);
+          Assert.assertEquals(closest, picked, closest * 1e-5);
+        }
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPartialCenter() {
+    new DistanceKernel(new double[5], 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFloatPartialCenter() {
+    new FloatDistanceKernel(new float[5], 2);
+  }
+
+  private static double[] randomCoordinates(Random random, int length) {
+    double[] coordinates = new double[length];
+    for (int i = 0; i < length; i++) {
+      coordinates[i] = (random.nextDouble() - 0.5) * 200;
+    }
+    return coordinates;
+  }
+
+  private static float[] toFloats(double[] values) {
+    float[] floats = new float[values.length];
+    for (int i = 0; i < values.length; i++) {
+      floats[i] = (float) values[i];
+    }
+    return floats;
+  }
+
+  private static double[] toDoubles(float[] values) {
+    double[] doubles = new double[values.length];
+    for (int i = 0; i < values.length; i++) {
+      doubles[i] = values[i];
+    }
+    return doubles;
+  }
+}
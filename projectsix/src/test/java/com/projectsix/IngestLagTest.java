@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.metrics.Metrics;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link IngestLag} tests, on an in-memory state dataset.
+ */
+public class IngestLagTest {
+
+  private MemoryKeyValueTable state;
+  private Map<String, Long> counters;
+
+  @Before
+  public void setUp() {
+    state = new MemoryKeyValueTable(KMeansState.DATASET);
+    counters = new HashMap<>();
+  }
+
+  @Test
+  public void testWithinBudgets() {
+    batch(new IngestLag("reader.0", 60000L, 100), 0L, 100);
+    Map<String, Long> reader = IngestLag.readAll(state).get("reader.0");
+    Assert.assertEquals(100L, reader.get("batchPoints").longValue());
+    Assert.assertEquals(100L, reader.get("maxBatchPoints").longValue());
+    Assert.assertEquals(60000L, reader.get("maxLatencyMillis").longValue());
+    Assert.assertFalse(IngestLag.isLagging(reader));
+    Assert.assertFalse(counters.containsKey("ingest.batch.overSize"));
+    Assert.assertFalse(counters.containsKey("ingest.batch.overLatency"));
+  }
+
+  @Test
+  public void testOverSize() {
+    IngestLag lag = new IngestLag("reader.0", 60000L, 100);
+    batch(lag, 0L, 101);
+    Map<String, Long> reader = IngestLag.readAll(state).get("reader.0");
+    Assert.assertEquals(101L, reader.get("batchPoints").longValue());
+    Assert.assertTrue(IngestLag.isLagging(reader));
+    Assert.assertEquals(1L, counters.get("ingest.batch.overSize").longValue());
+
+    // The next batch within the limit recovers
+    batch(lag, 0L, 50);
+    Assert.assertFalse(IngestLag.isLagging(IngestLag.readAll(state).get("reader.0")));
+  }
+
+  @Test
+  public void testNoSizeLimit() {
+    batch(new IngestLag("reader.0", 60000L, 0), 0L, 1000000);
+    Assert.assertFalse(IngestLag.isLagging(IngestLag.readAll(state).get("reader.0")));
+    Assert.assertFalse(counters.containsKey("ingest.batch.overSize"));
+  }
+
+  @Test
+  public void testOverLatency() {
+    batch(new IngestLag("reader.0", 1000L, 100), 600000L, 10);
+    batch(new IngestLag("reader.1", 1000L, 100), 0L, 10);
+    Map<String, Map<String, Long>> readers = IngestLag.readAll(state);
+    Assert.assertTrue(readers.get("reader.0").get("lagMillis") >= 600000L);
+    Assert.assertTrue(IngestLag.isLagging(readers.get("reader.0")));
+    Assert.assertFalse(IngestLag.isLagging(readers.get("reader.1")));
+    Assert.assertEquals(1L, counters.get("ingest.batch.overLatency").longValue());
+    Assert.assertEquals(1L, counters.get("ingest.lag.le.10m").longValue());
+  }
+
+  @Test
+  public void testUnsizedBatch() {
+    // A batch recorded before batches recorded their size
+    state.write(Bytes.toBytes(KMeansState.INGEST_PREFIX + "reader.0"),
+                Bytes.add(Bytes.toBytes(1000L), Bytes.toBytes(10L), Bytes.toBytes(60000L)));
+    Map<String, Long> reader = IngestLag.readAll(state).get("reader.0");
+    Assert.assertEquals(0L, reader.get("batchPoints").longValue());
+    Assert.assertEquals(0L, reader.get("maxBatchPoints").longValue());
+    Assert.assertFalse(IngestLag.isLagging(reader));
+  }
+
+  /**
+   * Records a batch of one event written {@code lagMillis} ago, holding {@code points} points.
+   */
+  private void batch(IngestLag lag, long lagMillis, int points) {
+    lag.startBatch();
+    lag.event(System.currentTimeMillis() - lagMillis);
+    lag.points(points);
+    lag.endBatch(new Metrics() {
+      @Override
+      public void count(String metricName, int delta) {
+        Long count = counters.get(metricName);
+        counters.put(metricName, (count == null ? 0L : count) + delta);
+      }
+
+      @Override
+      public void gauge(String metricName, long value) {
+      }
+    }, state);
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.rdd.RDD;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link LocalKMeans} with the assignment step of {@link SparkKMeansProgram} on a local Spark context
+ * using all cores. Both run a fixed amount of iterations from the same centers, so the scores are the cost of
+ * {@value #ITERATIONS} iterations. Run with {@code mvn test -Pbenchmark -Dbenchmark=KMeansBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KMeansBenchmark {
+
+  static final int ITERATIONS = 5;
+
+  @Param({"10000", "100000", "1000000"})
+  public int points;
+
+  @Param({"3", "16"})
+  public int dimensions;
+
+  @Param({"8", "64"})
+  public int k;
+
+  private double[] flat;
+  private double[] initialCenters;
+  private ForkJoinPool pool;
+  private JavaSparkContext sc;
+  private RDD<PointBlock> blocks;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    flat = randomPoints(points, dimensions, k, 1L);
+    initialCenters = LocalKMeans.sample(flat, dimensions, k, 2L);
+    pool = new ForkJoinPool();
+
+    sc = new JavaSparkContext(new SparkConf().setMaster("local[*]").setAppName("KMeansBenchmark")
+                                .set("spark.ui.enabled", "false"));
+    List<PointBlock> list = new ArrayList<>();
+    for (int from = 0; from < points; from += PointBlock.DEFAULT_CAPACITY) {
+      int size = Math.min(PointBlock.DEFAULT_CAPACITY, points - from);
+      PointBlock.Builder builder = new PointBlock.Builder(dimensions, size);
+      for (int i = from; i < from + size; i++) {
+        builder.add(flat, i * dimensions);
+      }
+      list.add(builder.build());
+    }
+    JavaRDD<PointBlock> rdd = sc.parallelize(list, sc.defaultParallelism()).cache();
+    rdd.count();
+    blocks = rdd.rdd();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    sc.stop();
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public double[] local() {
+    return new LocalKMeans(k, dimensions, ITERATIONS, -1.0, pool).run(flat, initialCenters).getCenters();
+  }
+
+  @Benchmark
+  public double[] spark() {
+    double[] centers = initialCenters.clone();
+    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+      CenterStats stats = SparkKMeansProgram$.MODULE$.assign(blocks, centers, k, dimensions, 1.0, iteration);
+      for (int i = 0; i < k; i++) {
+        for (int d = 0; d < dimensions && stats.counts()[i] > 0; d++) {
+          centers[i * dimensions + d] = stats.sums()[i * dimensions + d] / stats.counts()[i];
+        }
+      }
+    }
+    return centers;
+  }
+
+  /**
+   * Returns points scattered around {@code clusters} random locations.
+   */
+  static double[] randomPoints(int points, int dimensions, int clusters, long seed) {
+    Random random = new Random(seed);
+    double[] locations = new double[clusters * dimensions];
+    for (int i = 0; i < locations.length; i++) {
+      locations[i] = random.nextDouble() * 100;
+    }
+    double[] flat = new double[points * dimensions];
+    for (int p = 0; p < points; p++) {
+      int cluster = random.nextInt(clusters);
+      for (int d = 0; d < dimensions; d++) {
+        flat[p * dimensions + d] = locations[cluster * dimensions + d] + random.nextGaussian();
+      }
+    }
+    return flat;
+  }
+}
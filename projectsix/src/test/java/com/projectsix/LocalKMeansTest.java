@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link LocalKMeans} tests.
+ */
+public class LocalKMeansTest {
+
+  @Test
+  public void testSameCentersOnAnyPool() {
+    // Points that do not split into chunks evenly, with many chunks per thread
+    double[] points = KMeansBenchmark.randomPoints(100003, 3, 8, 1L);
+    double[] initial = LocalKMeans.sample(points, 3, 8, 2L);
+    LocalKMeans.Result expected = run(points, 3, initial, 1);
+    for (int parallelism : new int[] { 2, 8 }) {
+      LocalKMeans.Result result = run(points, 3, initial, parallelism);
+      Assert.assertEquals(expected.getIterations(), result.getIterations());
+      Assert.assertArrayEquals(expected.getCounts(), result.getCounts());
+      for (int i = 0; i < expected.getCenters().length; i++) {
+        Assert.assertEquals(String.format("Coordinate %d on a pool of %d", i, parallelism),
+                            Double.doubleToRawLongBits(expected.getCenters()[i]),
+                            Double.doubleToRawLongBits(result.getCenters()[i]));
+      }
+      Assert.assertEquals(Double.doubleToRawLongBits(expected.getCost()), Double.doubleToRawLongBits(result.getCost()));
+    }
+  }
+
+  @Test
+  public void testSeparatedClusters() {
+    // Two clusters far apart, starting from two points of the first one
+    double[] points = { 0, 0, 1, 0, 0, 1, 100, 100, 101, 100, 100, 101 };
+    LocalKMeans.Result result = run(points, 2, new double[] { 0, 0, 1, 0 }, 2);
+    Assert.assertEquals(RunSummary.CONVERGED, result.getStopReason());
+    Assert.assertArrayEquals(new long[] { 3, 3 }, result.getCounts());
+    double third = 1.0 / 3;
+    Assert.assertArrayEquals(new double[] { third, third, 100 + third, 100 + third }, result.getCenters(), 1e-12);
+  }
+
+  private static LocalKMeans.Result run(double[] points, int dimensions, double[] initial, int parallelism) {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      return new LocalKMeans(initial.length / dimensions, dimensions, 20, 0.0, pool).run(points, initial);
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.api.dataset.lib.KeyValueTable;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A {@link KeyValueTable} kept in a sorted map, for tests of code working on datasets.
+ */
+final class MemoryKeyValueTable extends KeyValueTable {
+
+  private final NavigableMap<byte[], byte[]> entries = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+
+  MemoryKeyValueTable(String name) {
+    super(name, null);
+  }
+
+  @Override
+  public byte[] read(String key) {
+    return read(Bytes.toBytes(key));
+  }
+
+  @Override
+  public byte[] read(byte[] key) {
+    return entries.get(key);
+  }
+
+  @Override
+  public void write(String key, byte[] value) {
+    write(Bytes.toBytes(key), value);
+  }
+
+  @Override
+  public void write(byte[] key, byte[] value) {
+    entries.put(key, value);
+  }
+
+  @Override
+  public void delete(byte[] key) {
+    entries.remove(key);
+  }
+
+  @Override
+  public CloseableIterator<KeyValue<byte[], byte[]>> scan(byte[] start, byte[] stop) {
+    return MemoryObjectStore.scan(entries, start, stop);
+  }
+
+  /**
+   * Returns the amount of stored entries.
+   */
+  int size() {
+    return entries.size();
+  }
+}
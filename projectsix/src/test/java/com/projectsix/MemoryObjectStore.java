@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.data.batch.Split;
+import co.cask.cdap.api.data.batch.SplitReader;
+import co.cask.cdap.api.dataset.lib.CloseableIterator;
+import co.cask.cdap.api.dataset.lib.KeyValue;
+import co.cask.cdap.api.dataset.lib.ObjectStore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * An {@link ObjectStore} kept in a sorted map, for tests of code working on datasets.
+ */
+final class MemoryObjectStore<T> implements ObjectStore<T> {
+
+  private final NavigableMap<byte[], T> entries = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+
+  @Override
+  public void write(String key, T object) {
+    write(Bytes.toBytes(key), object);
+  }
+
+  @Override
+  public void write(byte[] key, T object) {
+    entries.put(key, object);
+  }
+
+  @Override
+  public T read(String key) {
+    return read(Bytes.toBytes(key));
+  }
+
+  @Override
+  public T read(byte[] key) {
+    return entries.get(key);
+  }
+
+  @Override
+  public CloseableIterator<KeyValue<byte[], T>> scan(byte[] start, byte[] stop) {
+    return scan(entries, start, stop);
+  }
+
+  @Override
+  public void delete(byte[] key) {
+    entries.remove(key);
+  }
+
+  /**
+   * Returns the amount of stored objects.
+   */
+  int size() {
+    return entries.size();
+  }
+
+  @Override
+  public List<Split> getSplits(int numSplits, byte[] start, byte[] stop) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public List<Split> getSplits() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public SplitReader<byte[], T> createSplitReader(Split split) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void close() {
+  }
+
+  /**
+   * Scans the entries from {@code start} up to {@code stop}, either of them {@code null} to leave the range open.
+   */
+  static <V> CloseableIterator<KeyValue<byte[], V>> scan(NavigableMap<byte[], V> entries, byte[] start,
+                                                         byte[] stop) {
+    NavigableMap<byte[], V> range = entries;
+    if (start != null) {
+      range = range.tailMap(start, true);
+    }
+    if (stop != null) {
+      range = range.headMap(stop, false);
+    }
+    List<KeyValue<byte[], V>> scanned = new ArrayList<>();
+    for (Map.Entry<byte[], V> entry : range.entrySet()) {
+      scanned.add(new KeyValue<>(entry.getKey(), entry.getValue()));
+    }
+    final Iterator<KeyValue<byte[], V>> iterator = scanned.iterator();
+    return new CloseableIterator<KeyValue<byte[], V>>() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public KeyValue<byte[], V> next() {
+        return iterator.next();
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+}
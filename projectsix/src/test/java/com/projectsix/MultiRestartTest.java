@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests of the stats of {@link MultiRestart}.
+ */
+public class MultiRestartTest {
+
+  @Test
+  public void testRestartStats() {
+    // Two restarts of two centers in one dimension, the second restart having stopped
+    MultiRestart.RestartStats stats = new MultiRestart.RestartStats(2, 2, 1);
+    stats.stats().add(0, new double[] { 1.0 }, 0);
+    stats.stats().add(0, new double[] { 2.0 }, 0);
+    stats.stats().add(1, new double[] { 5.0 }, 0);
+    stats.costs()[0] = 4.5;
+
+    CenterStats first = stats.restart(0);
+    Assert.assertEquals(2, first.k());
+    Assert.assertArrayEquals(new long[] { 2, 1 }, first.counts());
+    Assert.assertArrayEquals(new double[] { 3.0, 5.0 }, first.sums(), 0.0);
+    Assert.assertEquals(4.5, first.cost(), 0.0);
+
+    CenterStats second = stats.restart(1);
+    Assert.assertArrayEquals(new long[] { 0, 0 }, second.counts());
+    Assert.assertEquals(0.0, second.cost(), 0.0);
+  }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * {@link PointBlock} tests, covering the encoded form of every precision and the error the precisions promise.
+ */
+public class PointBlockTest {
+
+  private static final String[] PRECISIONS = {
+    PointBlock.DOUBLE_PRECISION, PointBlock.FLOAT_PRECISION, PointBlock.Q16_PRECISION, PointBlock.Q8_PRECISION
+  };
+
+  private static final String[] QUANTIZED = { PointBlock.Q16_PRECISION, PointBlock.Q8_PRECISION };
+
+  @Test
+  public void testRoundTrip() {
+    double[] points = randomPoints(new Random(1L), 100, 3);
+    byte version = 1;
+    for (String precision : PRECISIONS) {
+      PointBlock block = build(points, 3, precision);
+      Assert.assertEquals(precision, block.getPrecision());
+      byte[] encoded = block.encode();
+      // Versions 1 to 4 in the order of the precisions
+      Assert.assertEquals(version++, encoded[0]);
+      PointBlock decoded = PointBlock.decode(encoded);
+      Assert.assertEquals(precision, decoded.getPrecision());
+      Assert.assertEquals(3, decoded.getDimensions());
+      Assert.assertEquals(100, decoded.getSize());
+      for (int i = 0; i < 100; i++) {
+        for (int d = 0; d < 3; d++) {
+          Assert.assertEquals(Double.doubleToLongBits(block.get(i, d)), Double.doubleToLongBits(decoded.get(i, d)));
+        }
+      }
+      Assert.assertArrayEquals(encoded, decoded.encode());
+    }
+  }
+
+  @Test
+  public void testEncodedSize() {
+    double[] points = randomPoints(new Random(2L), 10, 2);
+    Assert.assertEquals(9 + 20 * 8, build(points, 2, PointBlock.DOUBLE_PRECISION).encode().length);
+    Assert.assertEquals(9 + 20 * 4, build(points, 2, PointBlock.FLOAT_PRECISION).encode().length);
+    Assert.assertEquals(9 + 2 * 16 + 20 * 2, build(points, 2, PointBlock.Q16_PRECISION).encode().length);
+    Assert.assertEquals(9 + 2 * 16 + 20, build(points, 2, PointBlock.Q8_PRECISION).encode().length);
+  }
+
+  @Test
+  public void testDoubleExact() {
+    double[] points = randomPoints(new Random(3L), 50, 4);
+    assertWithin(points, build(points, 4, PointBlock.DOUBLE_PRECISION), 4, new double[4]);
+  }
+
+  @Test
+  public void testFloatError() {
+    double[] points = randomPoints(new Random(4L), 500, 4);
+    PointBlock block = build(points, 4, PointBlock.FLOAT_PRECISION);
+    for (int i = 0; i < 500; i++) {
+      for (int d = 0; d < 4; d++) {
+        double coordinate = points[i * 4 + d];
+        Assert.assertEquals(coordinate, block.get(i, d), Math.abs(coordinate) * Math.pow(2, -24));
+      }
+    }
+  }
+
+  @Test
+  public void testQuantizedError() {
+    Random random = new Random(5L);
+    for (String precision : QUANTIZED) {
+      double[] points = randomPoints(random, 1000, 3);
+      PointBlock block = PointBlock.decode(build(points, 3, precision).encode());
+      assertWithin(points, block, 3, quantizationErrors(points, 3, precision));
+    }
+  }
+
+  @Test
+  public void testConstantColumn() {
+    // The second column holds the same value for every point, so its step is zero
+    double[] points = new double[40];
+    for (int i = 0; i < 20; i++) {
+      points[i * 2] = i * 0.75;
+      points[i * 2 + 1] = -3.25;
+    }
+    for (String precision : QUANTIZED) {
+      PointBlock block = PointBlock.decode(build(points, 2, precision).encode());
+      for (int i = 0; i < 20; i++) {
+        Assert.assertEquals(-3.25, block.get(i, 1), 0.0);
+      }
+      assertWithin(points, block, 2, quantizationErrors(points, 2, precision));
+    }
+
+    // A single point makes every column constant
+    for (String precision : PRECISIONS) {
+      PointBlock block = PointBlock.decode(build(new double[] { 1.1, -2.2 }, 2, precision).encode());
+      Assert.assertEquals(1, block.getSize());
+      boolean rounded = precision.equals(PointBlock.FLOAT_PRECISION);
+      Assert.assertEquals(rounded ? (float) 1.1 : 1.1, block.get(0, 0), 0.0);
+      Assert.assertEquals(rounded ? (float) -2.2 : -2.2, block.get(0, 1), 0.0);
+    }
+  }
+
+  @Test
+  public void testEmptyBlock() {
+    for (String precision : PRECISIONS) {
+      PointBlock block = new PointBlock.Builder(3, 10).build(precision);
+      Assert.assertEquals(0, block.getSize());
+      PointBlock decoded = PointBlock.decode(block.encode());
+      Assert.assertEquals(precision, decoded.getPrecision());
+      Assert.assertEquals(3, decoded.getDimensions());
+      Assert.assertEquals(0, decoded.getSize());
+      Assert.assertEquals(0, decoded.withPrecision(PointBlock.Q8_PRECISION).getSize());
+    }
+  }
+
+  @Test
+  public void testWithPrecision() {
+    double[] points = randomPoints(new Random(6L), 300, 2);
+    PointBlock block = build(points, 2, PointBlock.DOUBLE_PRECISION);
+    Assert.assertSame(block, block.withPrecision(PointBlock.DOUBLE_PRECISION));
+    for (String precision : QUANTIZED) {
+      PointBlock converted = block.withPrecision(precision);
+      Assert.assertEquals(precision, converted.getPrecision());
+      assertWithin(points, converted, 2, quantizationErrors(points, 2, precision));
+    }
+  }
+
+  @Test
+  public void testWithPrecisionCompounds() {
+    Random random = new Random(7L);
+    String[][] conversions = {
+      { PointBlock.Q16_PRECISION, PointBlock.Q8_PRECISION },
+      { PointBlock.Q8_PRECISION, PointBlock.Q16_PRECISION },
+      { PointBlock.FLOAT_PRECISION, PointBlock.Q8_PRECISION },
+      { PointBlock.Q16_PRECISION, PointBlock.FLOAT_PRECISION }
+    };
+    for (String[] conversion : conversions) {
+      double[] points = randomPoints(random, 400, 3);
+      PointBlock first = build(points, 3, conversion[0]);
+      PointBlock second = first.withPrecision(conversion[1]);
+      Assert.assertEquals(conversion[1], second.getPrecision());
+
+      // The second conversion adds its own error, derived from the values it is given, to that of the first
+      double[] firstValues = values(first);
+      double[] firstErrors = errors(points, 3, conversion[0]);
+      double[] secondErrors = errors(firstValues, 3, conversion[1]);
+      double[] bounds = new double[3];
+      for (int d = 0; d < 3; d++) {
+        bounds[d] = firstErrors[d] + secondErrors[d];
+      }
+      assertWithin(firstValues, second, 3, secondErrors);
+      assertWithin(points, second, 3, bounds);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownVersion() {
+    byte[] encoded = build(new double[] { 1.0 }, 1, PointBlock.DOUBLE_PRECISION).encode();
+    encoded[0] = 5;
+    PointBlock.decode(encoded);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testQuantizeInfinite() {
+    build(new double[] { 1.0, Double.POSITIVE_INFINITY }, 1, PointBlock.Q8_PRECISION);
+  }
+
+  /**
+   * Returns the largest error a precision allows in every column, {@code (max - min) / (2 * (2^bits - 1))}
+   * for the quantized precisions and relative to the largest coordinate for floats.
+   */
+  private static double[] errors(double[] points, int dimensions, String precision) {
+    if (PointBlock.FLOAT_PRECISION.equals(precision)) {
+      double[] errors = new double[dimensions];
+      for (int i = 0; i < points.length; i++) {
+        errors[i % dimensions] = Math.max(errors[i % dimensions], Math.abs(points[i]) * Math.pow(2, -24));
+      }
+      return errors;
+    }
+    return quantizationErrors(points, dimensions, precision);
+  }
+
+  private static double[] quantizationErrors(double[] points, int dimensions, String precision) {
+    int levels = PointBlock.Q16_PRECISION.equals(precision) ? 0xFFFF : 0xFF;
+    double[] errors = new double[dimensions];
+    for (int d = 0; d < dimensions; d++) {
+      double min = Double.POSITIVE_INFINITY;
+      double max = Double.NEGATIVE_INFINITY;
+      for (int i = d; i < points.length; i += dimensions) {
+        min = Math.min(min, points[i]);
+        max = Math.max(max, points[i]);
+      }
+      errors[d] = (max - min) / (2 * levels);
+    }
+    return errors;
+  }
+
+  /**
+   * Asserts that every coordinate of the block is within the error of its column, allowing for the rounding
+   * of the arithmetic that restores it.
+   */
+  private static void assertWithin(double[] points, PointBlock block, int dimensions, double[] errors) {
+    Assert.assertEquals(points.length / dimensions, block.getSize());
+    double[] point = new double[dimensions];
+    for (int i = 0; i < block.getSize(); i++) {
+      block.copyPoint(i, point, 0);
+      for (int d = 0; d < dimensions; d++) {
+        double expected = points[i * dimensions + d];
+        double allowed = errors[d] * (1 + 1e-9) + 4 * Math.ulp(expected);
+        Assert.assertEquals(String.format("Coordinate %d of point %d", d, i), expected, point[d], allowed);
+        Assert.assertEquals(point[d], block.get(i, d), 0.0);
+      }
+    }
+  }
+
+  private static PointBlock build(double[] points, int dimensions, String precision) {
+    PointBlock.Builder builder = new PointBlock.Builder(dimensions, points.length / dimensions);
+    for (int offset = 0; offset < points.length; offset += dimensions) {
+      builder.add(points, offset);
+    }
+    return builder.build(precision);
+  }
+
+  private static double[] values(PointBlock block) {
+    double[] values = new double[block.getSize() * block.getDimensions()];
+    for (int i = 0; i < block.getSize(); i++) {
+      block.copyPoint(i, values, i * block.getDimensions());
+    }
+    return values;
+  }
+
+  /**
+   * Returns points with columns of different offsets and scales.
+   */
+  private static double[] randomPoints(Random random, int size, int dimensions) {
+    double[] points = new double[size * dimensions];
+    for (int i = 0; i < points.length; i++) {
+      int d = i % dimensions;
+      points[i] = (d - 1) * 1000.0 + random.nextGaussian() * Math.pow(10, d);
+    }
+    return points;
+  }
+}
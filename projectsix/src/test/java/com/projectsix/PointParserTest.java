@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import com.google.common.base.Charsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link PointParser} tests, comparing every parsed number bit for bit with {@link Double#parseDouble(String)}.
+ */
+public class PointParserTest {
+
+  @Test
+  public void testSigns() {
+    assertParsed("519.2");
+    assertParsed("-519.2");
+    assertParsed("+519.2");
+    assertParsed("0");
+    assertParsed("-0");
+    assertParsed("-0.0");
+    assertParsed("+0.000");
+  }
+
+  @Test
+  public void testExponents() {
+    assertParsed("-1.5e3");
+    assertParsed("1.5E3");
+    assertParsed("1.5e+3");
+    assertParsed("1.5e-3");
+    assertParsed("0.000123");
+    assertParsed("12e0");
+    assertParsed("1e22");
+    assertParsed("1e-22");
+    // Beyond the exact powers of ten
+    assertParsed("1e23");
+    assertParsed("1e-23");
+    assertParsed("6.02214076e23");
+    assertParsed("1.7976931348623157e308");
+    assertParsed("4.9e-324");
+    assertParsed("1e400");
+    assertParsed("1e-400");
+    assertParsed(".5");
+    assertParsed("5.");
+  }
+
+  @Test
+  public void testSignificantDigits() {
+    // Up to 15 significant digits take the fast path, more fall back
+    assertParsed("123456789012345");
+    assertParsed("0.000123456789012345");
+    assertParsed("1234567890123456");
+    assertParsed("9007199254740993");
+    assertParsed("3.14159265358979323846");
+    assertParsed("1.00000000000000000001");
+    assertParsed("0.1000000000000000055511151231257827");
+    assertParsed("2.2250738585072011e-308");
+  }
+
+  @Test
+  public void testRandomDecimals() {
+    Random random = new Random(42);
+    for (int i = 0; i < 100000; i++) {
+      StringBuilder number = new StringBuilder();
+      if (random.nextBoolean()) {
+        number.append(random.nextBoolean() ? '-' : '+');
+      }
+      int digits = 1 + random.nextInt(20);
+      int point = random.nextInt(digits + 1);
+      for (int d = 0; d < digits; d++) {
+        if (d == point) {
+          number.append('.');
+        }
+        number.append((char) ('0' + random.nextInt(10)));
+      }
+      if (random.nextInt(3) == 0) {
+        number.append(random.nextBoolean() ? 'e' : 'E').append(random.nextInt(61) - 30);
+      }
+      assertParsed(number.toString());
+    }
+  }
+
+  @Test
+  public void testMalformed() {
+    for (String malformed : new String[] { "", "-", "+", ".", "-.", "e5", "1e", "1e+", "1.2.3", "1x", "1e5x",
+                                           "--1", "abc", "0x10" }) {
+      try {
+        double parsed = PointParser.parseDouble(bytes(malformed), 0, malformed.length());
+        Assert.fail(String.format("Parsed '%s' as %s", malformed, parsed));
+      } catch (NumberFormatException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testParsePoint() {
+    double[] point = new double[3];
+    PointParser.parsePoint(bytes("  1.5\t-2e1  +3 "), point);
+    Assert.assertArrayEquals(new double[] { 1.5, -20.0, 3.0 }, point, 0.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParsePointTooFewCoordinates() {
+    PointParser.parsePoint(bytes("1.5 2.5"), new double[3]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParsePointTooManyCoordinates() {
+    PointParser.parsePoint(bytes("1.5 2.5 3.5 4.5"), new double[3]);
+  }
+
+  @Test
+  public void testCrLfLines() {
+    final List<double[]> points = new ArrayList<>();
+    int count = PointsPayload.decodeText(bytes("10.6 519.2 110.3\r\n\r\n10.7 518 109.2\r\n"), new double[3],
+                                         new PointsPayload.Sink() {
+      @Override
+      public void add(double[] coordinates) {
+        points.add(coordinates.clone());
+      }
+    });
+    Assert.assertEquals(2, count);
+    Assert.assertArrayEquals(new double[] { 10.6, 519.2, 110.3 }, points.get(0), 0.0);
+    Assert.assertArrayEquals(new double[] { 10.7, 518.0, 109.2 }, points.get(1), 0.0);
+  }
+
+  @Test
+  public void testOffsets() {
+    // Only the given range of the buffer is parsed
+    ByteBuffer buffer = bytes("99 1.25 99");
+    Assert.assertEquals(1.25, PointParser.parseDouble(buffer, 3, 7), 0.0);
+    double[] out = new double[4];
+    Assert.assertEquals(2, PointParser.parse(buffer, 2, 10, out, 1, 5));
+    Assert.assertArrayEquals(new double[] { 0.0, 1.25, 99.0, 0.0 }, out, 0.0);
+  }
+
+  private static void assertParsed(String number) {
+    double expected = Double.parseDouble(number);
+    double parsed = PointParser.parseDouble(bytes(number), 0, number.length());
+    Assert.assertEquals(number, Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(parsed));
+  }
+
+  private static ByteBuffer bytes(String text) {
+    return ByteBuffer.wrap(text.getBytes(Charsets.US_ASCII));
+  }
+}
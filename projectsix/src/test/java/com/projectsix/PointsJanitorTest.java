@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.Dataset;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests of the deletion of expired points by the {@link SparkKMeansApp.PointsJanitor}.
+ */
+public class PointsJanitorTest {
+
+  private static final long CUTOFF = 1000000L;
+
+  @Test
+  public void testCutoff() {
+    MemoryKeyValueTable table = new MemoryKeyValueTable("points");
+    PointKeys keys = new PointKeys(7L);
+    byte[] before = keys.next(CUTOFF - 1);
+    byte[] at = keys.next(CUTOFF);
+    byte[] after = keys.next(CUTOFF + 1);
+    for (byte[] key : new byte[][] { before, at, after }) {
+      table.write(key, key);
+    }
+
+    long[] counts = deleteAll(table, 1);
+    Assert.assertEquals(1L, counts[0]);
+    Assert.assertEquals(0L, counts[1]);
+    Assert.assertNull(table.read(before));
+    // Points written at the cutoff are kept
+    Assert.assertNotNull(table.read(at));
+    Assert.assertNotNull(table.read(after));
+  }
+
+  @Test
+  public void testChunks() {
+    MemoryObjectStore<String> store = new MemoryObjectStore<>();
+    // Several writers at once, so keys of different prefixes interleave by timestamp
+    PointKeys[] writers = { new PointKeys(1L), new PointKeys(-1L), new PointKeys(Long.MAX_VALUE) };
+    int expired = 2 * SparkKMeansApp.PointsJanitor.CHUNK_SIZE + 5432;
+    for (int i = 0; i < expired; i++) {
+      store.write(writers[i % writers.length].next(CUTOFF - expired + i), "expired");
+    }
+    for (int i = 0; i < 100; i++) {
+      store.write(writers[i % writers.length].next(CUTOFF + i), "kept");
+    }
+
+    long[] counts = deleteAll(store, 3);
+    Assert.assertEquals(expired, counts[0]);
+    Assert.assertEquals(0L, counts[1]);
+    Assert.assertEquals(100, store.size());
+  }
+
+  @Test
+  public void testFullChunks() {
+    // The last chunk is full, so one more scan finds nothing left
+    MemoryKeyValueTable table = new MemoryKeyValueTable("points");
+    PointKeys keys = new PointKeys(3L);
+    for (int i = 0; i < 2 * SparkKMeansApp.PointsJanitor.CHUNK_SIZE; i++) {
+      table.write(keys.next(i), Bytes.toBytes(i));
+    }
+    long[] counts = deleteAll(table, 3);
+    Assert.assertEquals(2 * SparkKMeansApp.PointsJanitor.CHUNK_SIZE, counts[0]);
+    Assert.assertEquals(0, table.size());
+  }
+
+  @Test
+  public void testOtherKeysSkipped() {
+    MemoryKeyValueTable table = new MemoryKeyValueTable("points");
+    PointKeys keys = new PointKeys(5L);
+    table.write(keys.next(10L), Bytes.toBytes(1));
+    table.write(Bytes.toBytes(20L), Bytes.toBytes(2));
+    table.write(Bytes.add(keys.next(30L), new byte[1]), Bytes.toBytes(3));
+    table.write(keys.next(40L), Bytes.toBytes(4));
+
+    long[] counts = deleteAll(table, 1);
+    Assert.assertEquals(2L, counts[0]);
+    Assert.assertEquals(2L, counts[1]);
+    Assert.assertEquals(2, table.size());
+    Assert.assertNotNull(table.read(Bytes.toBytes(20L)));
+  }
+
+  /**
+   * Deletes the expired keys chunk by chunk, as the janitor does, and returns the amounts of deleted and of
+   * skipped keys.
+   */
+  private static long[] deleteAll(Dataset dataset, int expectedChunks) {
+    long[] deleted = { 0L };
+    long[] skipped = { 0L };
+    byte[] next = Bytes.toBytes(0L);
+    int chunks = 0;
+    while (next != null) {
+      next = SparkKMeansApp.PointsJanitor.deleteBefore(dataset, next, CUTOFF, deleted, skipped);
+      chunks++;
+    }
+    Assert.assertEquals(expectedChunks, chunks);
+    return new long[] { deleted[0], skipped[0] };
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.rdd.RDD;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.Option;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link PrunedAssignment} tests, comparing the pruned assignments with the brute force ones over several
+ * iterations of moving centers.
+ */
+public class PrunedAssignmentTest {
+
+  private static final int DIMENSIONS = 2;
+  private static final int K = 4;
+  private static final int ITERATIONS = 12;
+  private static final int PARTITIONS = 3;
+
+  private static JavaSparkContext sc;
+  private static JavaRDD<PointBlock> data;
+  private static List<List<PointBlock>> partitions;
+
+  @BeforeClass
+  public static void setUp() {
+    sc = new JavaSparkContext(new SparkConf().setMaster("local[2]").setAppName("PrunedAssignmentTest")
+                                .set("spark.ui.enabled", "false"));
+    // Points on an integer grid and centers on an even one, so that many points lie halfway between centers
+    List<PointBlock> blocks = new ArrayList<>();
+    PointBlock.Builder builder = new PointBlock.Builder(DIMENSIONS, 32);
+    for (int x = 0; x < 20; x++) {
+      for (int y = 0; y < 20; y++) {
+        builder.add(new double[] { x, y }, 0);
+        if (builder.isFull()) {
+          blocks.add(builder.build());
+          builder.clear();
+        }
+      }
+    }
+    blocks.add(builder.build());
+    data = sc.parallelize(blocks, PARTITIONS).cache();
+    partitions = data.glom().collect();
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    sc.stop();
+  }
+
+  @Test
+  public void testAllPoints() {
+    assertSameAssignments(1.0, false);
+  }
+
+  @Test
+  public void testFraction() {
+    assertSameAssignments(0.4, false);
+  }
+
+  @Test
+  public void testCheckpointed() {
+    assertSameAssignments(0.7, true);
+  }
+
+  /**
+   * Runs the pruned assignment for several iterations of moving centers and checks that every sampled
+   * point is assigned to the center {@link Distances#nearest} picks, and that the stats match those of the
+   * brute force assignment.
+   */
+  private static void assertSameAssignments(double fraction, boolean checkpoint) {
+    Random random = new Random(7L);
+    double[] centers = { 0, 0, 10, 0, 0, 10, 10, 10 };
+    double[] previousCenters = null;
+    RDD<Tuple2<PrunedAssignment.BlockBounds[], CenterStats>> bounds = null;
+
+    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+      Broadcast<PrunedAssignment.Geometry> geometry =
+        sc.broadcast(PrunedAssignment.geometry(centers.clone(), Option.apply(previousCenters), DIMENSIONS));
+      RDD<Tuple2<PrunedAssignment.BlockBounds[], CenterStats>> assigned =
+        PrunedAssignment.assign(data.rdd(), Option.apply(bounds), geometry, K, DIMENSIONS, fraction, iteration);
+      if (checkpoint && iteration % 3 == 2) {
+        PrunedAssignment.checkpoint(assigned);
+      }
+      List<Tuple2<PrunedAssignment.BlockBounds[], CenterStats>> result = assigned.toJavaRDD().collect();
+      Assert.assertEquals(PARTITIONS, result.size());
+
+      CenterStats pruned = new CenterStats(K, DIMENSIONS);
+      double[] point = new double[DIMENSIONS];
+      for (int p = 0; p < PARTITIONS; p++) {
+        pruned.merge(result.get(p)._2());
+        // The same random sequence as the assignment decides which points are sampled
+        Random sample = new Random(iteration * 31L + p);
+        List<PointBlock> blocks = partitions.get(p);
+        PrunedAssignment.BlockBounds[] blockBounds = result.get(p)._1();
+        Assert.assertEquals(blocks.size(), blockBounds.length);
+        for (int b = 0; b < blocks.size(); b++) {
+          for (int i = 0; i < blocks.get(b).getSize(); i++) {
+            if (fraction >= 1.0 || sample.nextDouble() < fraction) {
+              blocks.get(b).copyPoint(i, point, 0);
+              String message = String.format("Point (%s, %s) in iteration %d", point[0], point[1], iteration);
+              Assert.assertEquals(message, Distances.nearest(point, 0, centers, DIMENSIONS),
+                                  blockBounds[b].assignment()[i]);
+            }
+          }
+        }
+      }
+
+      CenterStats expected = SparkKMeansProgram$.MODULE$.assign(data.rdd(), centers, K, DIMENSIONS,
+                                                                fraction, iteration);
+      Assert.assertArrayEquals(expected.counts(), pruned.counts());
+      Assert.assertArrayEquals(expected.sums(), pruned.sums(), 1e-9);
+      Assert.assertEquals(expected.cost(), pruned.cost(), 1e-6);
+
+      if (bounds != null) {
+        bounds.unpersist(true);
+      }
+      bounds = assigned;
+      previousCenters = centers.clone();
+      move(centers, iteration, random);
+    }
+    bounds.unpersist(true);
+  }
+
+  /**
+   * Moves the centers a little along the even grid, making two of them coincide every third iteration.
+   */
+  private static void move(double[] centers, int iteration, Random random) {
+    for (int i = 0; i < centers.length; i++) {
+      centers[i] = Math.max(0, Math.min(18, centers[i] + 2 * (random.nextInt(3) - 1)));
+    }
+    if (iteration % 3 == 1) {
+      int from = random.nextInt(K);
+      int to = (from + 1 + random.nextInt(K - 1)) % K;
+      System.arraycopy(centers, from * DIMENSIONS, centers, to * DIMENSIONS, DIMENSIONS);
+    }
+  }
+}
@@ -56,6 +56,8 @@ public class SparkKMeansAppTest extends TestBase {
     streamManager.send("10.6 519.6 109.9");
     streamManager.send("10.6 517.9 108.9");
     streamManager.send("10.7 518 109.2");
+    // Several points can be sent in one event, one per line
+    streamManager.send("10.5 518.4 109.6\n10.8 519.1 110.0\n");
 
     //  Wait for the events to be processed, or at most 5 seconds
     RuntimeMetrics metrics = flowManager.getFlowletMetrics("reader");
@@ -82,6 +84,55 @@ public class SparkKMeansAppTest extends TestBase {
       Assert.assertTrue(value > 0);
     }
 
+    // Request all centers at once and poll them again with their ETag
+    URL allUrl = new URL(serviceManager.getServiceURL(15, TimeUnit.SECONDS), "centers");
+    HttpURLConnection allConn = (HttpURLConnection) allUrl.openConnection();
+    String etag;
+    try {
+      Assert.assertEquals(HttpURLConnection.HTTP_OK, allConn.getResponseCode());
+      etag = allConn.getHeaderField("ETag");
+      Assert.assertNotNull(etag);
+      String[] lines = new String(ByteStreams.toByteArray(allConn.getInputStream()), Charsets.UTF_8).split("\n");
+      Assert.assertEquals(2, lines.length);
+      Assert.assertEquals(response, lines[1]);
+    } finally {
+      allConn.disconnect();
+    }
+    HttpURLConnection pollConn = (HttpURLConnection) allUrl.openConnection();
+    pollConn.setRequestProperty("If-None-Match", etag);
+    try {
+      Assert.assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, pollConn.getResponseCode());
+    } finally {
+      pollConn.disconnect();
+    }
+
+    // The run published the first generation of centers
+    String generations = requestService(new URL(serviceManager.getServiceURL(15, TimeUnit.SECONDS), "generations"));
+    Assert.assertTrue(generations, generations.contains("\"active\":1"));
+
+    // The reader recorded its lag, well within the default budget
+    String health = requestService(new URL(serviceManager.getServiceURL(15, TimeUnit.SECONDS), "health"));
+    Assert.assertTrue(health, health.contains("\"status\":\"ok\"") && health.contains("\"reader.0\""));
+
+    // Classify a batch of points against the centers
+    URL classifyUrl = new URL(serviceManager.getServiceURL(15, TimeUnit.SECONDS), "classify");
+    HttpURLConnection classifyConn = (HttpURLConnection) classifyUrl.openConnection();
+    classifyConn.setRequestMethod("POST");
+    classifyConn.setDoOutput(true);
+    try {
+      classifyConn.getOutputStream().write("10.6 519.2 110.3\n10.7 518 109.2\n".getBytes(Charsets.UTF_8));
+      Assert.assertEquals(HttpURLConnection.HTTP_OK, classifyConn.getResponseCode());
+      String[] labels = new String(ByteStreams.toByteArray(classifyConn.getInputStream()), Charsets.UTF_8)
+        .split("\n");
+      Assert.assertEquals(2, labels.length);
+      for (String label : labels) {
+        int index = Integer.parseInt(label);
+        Assert.assertTrue(index == 0 || index == 1);
+      }
+    } finally {
+      classifyConn.disconnect();
+    }
+
     // Request data by incorrect index and verify response
     URL url = new URL(serviceManager.getServiceURL(15, TimeUnit.SECONDS), "centers/10");
     HttpURLConnection conn = (HttpURLConnection) url.openConnection();
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.projectsix;
+
+import org.junit.Assert;
+import org.junit.Test;
+import scala.Option;
+import scala.Tuple2;
+
+/**
+ * Tests of the range of points a {@link SparkKMeansProgram} run reads and of the rules ending it.
+ */
+public class SparkKMeansProgramTest {
+
+  private static final SparkKMeansProgram$ PROGRAM = SparkKMeansProgram$.MODULE$;
+
+  @Test
+  public void testConverged() {
+    KMeansOptions options = options("4 0.5");
+    Assert.assertEquals(Option.apply(RunSummary.CONVERGED), PROGRAM.convergenceRule(options, 0.5, 10.0, 9.0));
+    Assert.assertEquals(Option.apply(RunSummary.CONVERGED), PROGRAM.convergenceRule(options, 0.0, 10.0, 9.0));
+    Assert.assertEquals(Option.<String>empty(), PROGRAM.convergenceRule(options, 0.6, 10.0, 9.0));
+  }
+
+  @Test
+  public void testMinImprovement() {
+    KMeansOptions options = options("4 0.5 minImprovement=0.1");
+    // Improving by exactly the minimum keeps going, less stops, getting worse stops too
+    Assert.assertEquals(Option.<String>empty(), PROGRAM.convergenceRule(options, 1.0, 10.0, 9.0));
+    Assert.assertEquals(Option.apply(RunSummary.MIN_IMPROVEMENT), PROGRAM.convergenceRule(options, 1.0, 10.0, 9.5));
+    Assert.assertEquals(Option.apply(RunSummary.MIN_IMPROVEMENT), PROGRAM.convergenceRule(options, 1.0, 10.0, 11.0));
+    // Converging takes precedence
+    Assert.assertEquals(Option.apply(RunSummary.CONVERGED), PROGRAM.convergenceRule(options, 0.1, 10.0, 9.5));
+    // Without a minimum any improvement keeps going
+    Assert.assertEquals(Option.<String>empty(), PROGRAM.convergenceRule(options("4 0.5"), 1.0, 10.0, 10.0));
+  }
+
+  @Test
+  public void testFirstIteration() {
+    // The first iteration has no previous cost to improve on
+    KMeansOptions options = options("4 0.5 minImprovement=0.1");
+    Assert.assertEquals(Option.<String>empty(), PROGRAM.convergenceRule(options, 1.0, Double.NaN, 9.0));
+    Assert.assertEquals(Option.<String>empty(), PROGRAM.stopRule(options, 1, 1.0, Double.NaN, 9.0, 0L));
+    // Nor does a previous cost of zero
+    Assert.assertEquals(Option.<String>empty(), PROGRAM.convergenceRule(options, 1.0, 0.0, 0.0));
+  }
+
+  @Test
+  public void testMaxIterations() {
+    KMeansOptions options = options("4 0.5 maxIterations=3");
+    Assert.assertEquals(Option.<String>empty(), PROGRAM.budgetRule(options, 2, 0L));
+    Assert.assertEquals(Option.apply(RunSummary.MAX_ITERATIONS), PROGRAM.budgetRule(options, 3, 0L));
+    Assert.assertEquals(Option.apply(RunSummary.MAX_ITERATIONS), PROGRAM.budgetRule(options, 4, 0L));
+  }
+
+  @Test
+  public void testTimeBudget() {
+    KMeansOptions options = options("4 0.5 maxSeconds=2");
+    Assert.assertEquals(Option.<String>empty(), PROGRAM.budgetRule(options, 1, 1999L));
+    Assert.assertEquals(Option.apply(RunSummary.TIME_BUDGET), PROGRAM.budgetRule(options, 1, 2000L));
+    // No budget by default
+    Assert.assertEquals(Option.<String>empty(), PROGRAM.budgetRule(options("4 0.5"), 1, Long.MAX_VALUE));
+    // Running out of iterations takes precedence
+    Assert.assertEquals(Option.apply(RunSummary.MAX_ITERATIONS),
+                        PROGRAM.budgetRule(options("4 0.5 maxSeconds=2 maxIterations=1"), 1, 5000L));
+  }
+
+  @Test
+  public void testStopRule() {
+    KMeansOptions options = options("4 0.5 maxIterations=5 maxSeconds=2 minImprovement=0.1");
+    Assert.assertEquals(Option.<String>empty(), PROGRAM.stopRule(options, 2, 1.0, 10.0, 8.0, 1000L));
+    // Convergence is reported before the budget
+    Assert.assertEquals(Option.apply(RunSummary.CONVERGED), PROGRAM.stopRule(options, 5, 0.1, 10.0, 8.0, 3000L));
+    Assert.assertEquals(Option.apply(RunSummary.MIN_IMPROVEMENT),
+                        PROGRAM.stopRule(options, 5, 1.0, 10.0, 9.9, 3000L));
+    Assert.assertEquals(Option.apply(RunSummary.MAX_ITERATIONS), PROGRAM.stopRule(options, 5, 1.0, 10.0, 8.0, 0L));
+    Assert.assertEquals(Option.apply(RunSummary.TIME_BUDGET), PROGRAM.stopRule(options, 2, 1.0, 10.0, 8.0, 3000L));
+  }
+
+  @Test
+  public void testBoundedIncrementalRuns() {
+    // The first run only reads the points written before 6000, though it started at 10000
+    KMeansOptions bounded = options("4 0.5 mode=incremental to=6000");
+    Option<Tuple2<Object, Object>> first = PROGRAM.readRange(Option.empty(), bounded, 10000L);
+    assertRange(0L, 6000L, first);
+    long watermark = PROGRAM.watermark(first, 10000L);
+    Assert.assertEquals(6000L, watermark);
+
+    // So the next run continues from there, reading the points of the gap
+    KMeansOptions unbounded = options("4 0.5 mode=incremental");
+    Option<Tuple2<Object, Object>> second = PROGRAM.readRange(Option.<Object>apply(watermark), unbounded, 20000L);
+    assertRange(6000L, 20000L, second);
+    Assert.assertEquals(20000L, PROGRAM.watermark(second, 20000L));
+
+    // A run limited to before its watermark reads nothing and keeps the watermark
+    Option<Tuple2<Object, Object>> empty = PROGRAM.readRange(Option.<Object>apply(watermark), bounded, 20000L);
+    assertRange(6000L, 6000L, empty);
+    Assert.assertEquals(6000L, PROGRAM.watermark(empty, 20000L));
+  }
+
+  @Test
+  public void testWatermarkAtRunStart() {
+    // Unlimited runs and open ended windows read up to the start of the run
+    Assert.assertEquals(10000L, PROGRAM.watermark(PROGRAM.readRange(Option.empty(), options("4 0.5"), 10000L),
+                                                  10000L));
+    Option<Tuple2<Object, Object>> window = PROGRAM.readRange(Option.empty(), options("4 0.5 window=3"), 10000L);
+    assertRange(7000L, Long.MAX_VALUE, window);
+    Assert.assertEquals(10000L, PROGRAM.watermark(window, 10000L));
+    Option<Tuple2<Object, Object>> since = PROGRAM.readRange(Option.<Object>apply(4000L),
+                                                             options("4 0.5 mode=incremental window=3"), 10000L);
+    assertRange(7000L, 10000L, since);
+    Assert.assertEquals(10000L, PROGRAM.watermark(since, 10000L));
+  }
+
+  private static KMeansOptions options(String args) {
+    return KMeansOptions.parse(args.split(" "));
+  }
+
+  private static void assertRange(long from, long to, Option<Tuple2<Object, Object>> range) {
+    Assert.assertTrue(range.isDefined());
+    Assert.assertEquals(from, ((Long) range.get()._1()).longValue());
+    Assert.assertEquals(to, ((Long) range.get()._2()).longValue());
+  }
+}